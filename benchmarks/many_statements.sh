@@ -0,0 +1,15 @@
+#!/bin/bash
+# per-statement overhead in script mode: runs a script made of N trivial statements
+#
+# usage: benchmarks/many_statements.sh [N]
+# requires main/target/hosh.jar (mvn install -DskipTests)
+N=${1:-1000}
+SCRIPT=$(mktemp)
+trap 'rm -f "$SCRIPT"' EXIT
+i=0
+while [ $i -lt "$N" ]; do
+	echo "set X $i" >> "$SCRIPT"
+	i=$((i + 1))
+done
+echo 'echo ${X}' >> "$SCRIPT"
+time java -jar main/target/hosh.jar "$SCRIPT"
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import com.sun.management.ThreadMXBean;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bytes allocated by all threads of the benchmark JVM during each iteration, while '-prof gc'
+ * sees only the benchmark thread: hosh runs commands in worker threads.
+ * <p>
+ * When the benchmark has a 'records' parameter, bytes are reported per record.
+ * Threads terminated during the iteration are not accounted.
+ * <p>
+ * Usage: {@code java -jar benchmarks.jar LambdaBenchmark -prof hosh.benchmarks.AllThreadsAllocationProfiler}
+ */
+public class AllThreadsAllocationProfiler implements InternalProfiler {
+
+	private long before;
+
+	@Override
+	public String getDescription() {
+		return "bytes allocated by all threads";
+	}
+
+	@Override
+	public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+		before = allocatedBytes();
+	}
+
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+		long allocated = allocatedBytes() - before;
+		String records = benchmarkParams.getParam("records");
+		if (records == null) {
+			return List.of(new ScalarResult("alloc.all-threads", allocated, "B", AggregationPolicy.AVG));
+		}
+		return List.of(new ScalarResult("alloc.all-threads.norm", (double) allocated / Long.parseLong(records), "B/record", AggregationPolicy.AVG));
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			       .filter(bytes -> bytes > 0)
+			       .sum();
+	}
+}
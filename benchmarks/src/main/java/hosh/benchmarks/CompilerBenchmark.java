@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import hosh.runtime.BootstrapBuiltins;
+import hosh.runtime.CommandResolvers;
+import hosh.runtime.Compiler;
+import hosh.runtime.Compiler.Program;
+import hosh.runtime.PathInitializer;
+import hosh.spi.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+/**
+ * Compilation of typical one-liners typed in the REPL, with all built-in commands registered
+ * and the PATH of the current environment (for external commands).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class CompilerBenchmark {
+
+	@Param({
+			"ls",
+			"rand | drop 100 | take 100 | count",
+			"walk . | glob '*.java' | count",
+			"withTime { lines pom.xml | sort | distinct }",
+			"echo ${HOME} | split text ' ' | take 1",
+			"java -version"
+	})
+	public String input;
+
+	private Compiler compiler;
+
+	@Setup
+	public void setup() {
+		LogManager.getLogManager().reset();
+		State state = new State();
+		state.setCwd(Paths.get("."));
+		state.getVariables().putAll(System.getenv());
+		state.setPath(new PathInitializer().initializePath(System.getenv("PATH")));
+		new BootstrapBuiltins().registerAllBuiltins(state);
+		compiler = new Compiler(CommandResolvers.builtinsThenExternal(state));
+	}
+
+	@Benchmark
+	public Program compile() {
+		return compiler.compile(input);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import hosh.runtime.BootstrapBuiltins;
+import hosh.runtime.CommandResolvers;
+import hosh.runtime.Compiler;
+import hosh.runtime.Compiler.Program;
+import hosh.runtime.Injector;
+import hosh.runtime.Interpreter;
+import hosh.runtime.PathInitializer;
+import hosh.spi.ExitStatus;
+import hosh.spi.OutputChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+/**
+ * An external command writing lines of 80 characters to both stdout and stderr
+ * (1 GiB each by default): stdout is decoded into records and counted by hosh,
+ * or counted by another external command connected by an OS pipe, while stderr
+ * is always decoded by hosh and sent to the error channel, concurrently.
+ * <p>
+ * Requires 'sh', 'yes', 'head' and 'wc' in the PATH; the interpreter handles SIGINT
+ * by means of jdk.internal.misc.Signal, as in hosh.jar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "--add-exports=java.base/jdk.internal.misc=ALL-UNNAMED")
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class ExternalCommandBenchmark {
+
+	private static final String LINE = "0123456789".repeat(8).substring(1); // plus '\n'
+
+	@Param({"1073741824"})
+	public long bytes;
+
+	@Param({"count", "wc -l"})
+	public String consumer;
+
+	private Interpreter interpreter;
+
+	private Program program;
+
+	@Setup
+	public void setup() {
+		LogManager.getLogManager().reset();
+		hosh.spi.State state = new hosh.spi.State();
+		state.setCwd(Paths.get("."));
+		state.getVariables().putAll(System.getenv());
+		state.setPath(new PathInitializer().initializePath(System.getenv("PATH")));
+		new BootstrapBuiltins().registerAllBuiltins(state);
+		Injector injector = new Injector();
+		injector.setState(state);
+		interpreter = new Interpreter(state, injector);
+		String child = String.format("(yes %1$s | head -c %2$d >&2) & yes %1$s | head -c %2$d; wait", LINE, bytes);
+		Compiler compiler = new Compiler(CommandResolvers.builtinsThenExternal(state));
+		program = compiler.compile(String.format("sh -c '%s' | %s", child, consumer));
+	}
+
+	@Benchmark
+	public ExitStatus lines(Blackhole blackhole) {
+		OutputChannel out = blackhole::consume;
+		OutputChannel err = blackhole::consume;
+		ExitStatus exitStatus = interpreter.eval(program, out, err);
+		if (exitStatus.isError()) {
+			throw new IllegalStateException("failed: " + exitStatus);
+		}
+		return exitStatus;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import hosh.runtime.BootstrapBuiltins;
+import hosh.runtime.CommandResolvers;
+import hosh.runtime.Compiler;
+import hosh.runtime.Compiler.Program;
+import hosh.runtime.Injector;
+import hosh.runtime.Interpreter;
+import hosh.spi.ExitStatus;
+import hosh.spi.OutputChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+/**
+ * A lambda evaluated for 1M records, with as many variables defined as in a typical
+ * environment (or more).
+ * <p>
+ * Records are handled by worker threads, not seen by '-prof gc': use
+ * '-prof hosh.benchmarks.AllThreadsAllocationProfiler' to get bytes allocated per record.
+ * <p>
+ * The interpreter handles SIGINT by means of jdk.internal.misc.Signal, as in hosh.jar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-exports=java.base/jdk.internal.misc=ALL-UNNAMED")
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class LambdaBenchmark {
+
+	@Param({"1000000"})
+	public int records;
+
+	@Param({"50", "500"})
+	public int variables;
+
+	private Interpreter interpreter;
+
+	private Program program;
+
+	@Setup
+	public void setup() {
+		LogManager.getLogManager().reset();
+		hosh.spi.State state = new hosh.spi.State();
+		state.setCwd(Paths.get("."));
+		for (int i = 0; i < variables; i++) {
+			state.getVariables().put("VARIABLE_" + i, "value of variable " + i);
+		}
+		new BootstrapBuiltins().registerAllBuiltins(state);
+		Injector injector = new Injector();
+		injector.setState(state);
+		interpreter = new Interpreter(state, injector);
+		Compiler compiler = new Compiler(CommandResolvers.builtinsThenExternal(state));
+		program = compiler.compile(String.format("rand | take %d | { rand -> echo ${rand} }", records));
+	}
+
+	@Benchmark
+	public ExitStatus lambda(Blackhole blackhole) {
+		OutputChannel out = blackhole::consume;
+		ExitStatus exitStatus = interpreter.eval(program, out, out);
+		if (exitStatus.isError()) {
+			throw new IllegalStateException("failed: " + exitStatus);
+		}
+		return exitStatus;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import hosh.runtime.Pipe;
+import hosh.runtime.Pipes;
+import hosh.spi.Keys;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Values;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a single record: the benchmark thread sends a record to an echo thread
+ * and waits for it to come back on a second pipe.
+ * <p>
+ * The batching channel is left out on purpose: it trades latency for throughput
+ * and would just measure its own flush timeout.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PipeLatencyBenchmark {
+
+	@Param({Pipes.DIRECT, Pipes.RING})
+	public String channel;
+
+	private final Record record = Records.singleton(Keys.VALUE, Values.ofNumeric(42));
+
+	private Pipe ping;
+
+	private Pipe pong;
+
+	private ExecutorService echo;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		ping = Pipes.byName(channel).get();
+		pong = Pipes.byName(channel).get();
+		echo = Executors.newSingleThreadExecutor();
+		echo.submit(() -> {
+			while (true) {
+				Optional<Record> incoming = ping.recv();
+				if (incoming.isEmpty()) {
+					break;
+				}
+				pong.send(incoming.get());
+			}
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ping.stopConsumer();
+		echo.shutdown();
+	}
+
+	@Benchmark
+	public Optional<Record> roundTrip() {
+		ping.send(record);
+		return pong.recv();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.benchmarks;
+
+import hosh.spi.Keys;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Value;
+import hosh.spi.Values;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building records and looking up values by key, shaped like the output of 'ls'.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordsBenchmark {
+
+	private final Value path = Values.ofPath(Paths.get("pom.xml"));
+
+	private final Value size = Values.ofSize(4096);
+
+	private final Value modified = Values.ofInstant(Instant.EPOCH);
+
+	private final Record record = Records.builder()
+			.entry(Keys.PATH, path)
+			.entry(Keys.SIZE, size)
+			.entry(Keys.CREATED, modified)
+			.entry(Keys.MODIFIED, modified)
+			.entry(Keys.ACCESSED, modified)
+			.build();
+
+	@Benchmark
+	public Record build() {
+		return Records.builder()
+				.entry(Keys.PATH, path)
+				.entry(Keys.SIZE, size)
+				.entry(Keys.CREATED, modified)
+				.entry(Keys.MODIFIED, modified)
+				.entry(Keys.ACCESSED, modified)
+				.build();
+	}
+
+	@Benchmark
+	public Optional<Value> valueOfFirstKey() {
+		return record.value(Keys.PATH);
+	}
+
+	@Benchmark
+	public Optional<Value> valueOfLastKey() {
+		return record.value(Keys.ACCESSED);
+	}
+
+	@Benchmark
+	public Optional<Value> valueOfMissingKey() {
+		return record.value(Keys.TEXT);
+	}
+}
@@ -33,6 +33,7 @@ import hosh.runtime.Compiler;
 import hosh.runtime.Compiler.Program;
 import hosh.runtime.ConsoleChannel;
 import hosh.runtime.DisabledHistory;
+import hosh.runtime.ExecutableIndex;
 import hosh.runtime.FileSystemCompleter;
 import hosh.runtime.HoshFormatter;
 import hosh.runtime.HoshHighlighter;
@@ -52,6 +53,8 @@ import hosh.spi.OutputChannel;
 import hosh.spi.Records;
 import hosh.spi.State;
 import hosh.spi.Values;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -111,6 +114,38 @@ public class Hosh {
 		 */
 		public static final String HOSH_HISTORY = "HOSH_HISTORY";
 
+		/**
+		 * Allows to select how records are exchanged between stages of a pipeline.
+		 * <p>
+		 * Allowed values: "direct" (one record at time), "batching", "ring" (bounded ring buffer).
+		 * Default: "batching" for pipelines made only of built-in commands, "direct" otherwise.
+		 */
+		public static final String HOSH_PIPELINE_CHANNEL = "HOSH_PIPELINE_CHANNEL";
+
+		/**
+		 * Allows to run commands like 'filter', 'select' or 'take' in the same thread of the previous command in a pipeline.
+		 * <p>
+		 * Allowed values: "true", "false".
+		 * Default: "true".
+		 */
+		public static final String HOSH_PIPELINE_FUSION = "HOSH_PIPELINE_FUSION";
+
+		/**
+		 * Allows to run commands on virtual threads.
+		 * <p>
+		 * Allowed values: "platform", "virtual" (requires JDK 21, falls back to "platform" otherwise).
+		 * Default: "platform".
+		 */
+		public static final String HOSH_THREADS = "HOSH_THREADS";
+
+		/**
+		 * Allows to record hosh events (statements, processes, pipeline waits) with Java Flight Recorder.
+		 * <p>
+		 * Allowed values: path of the recording, written on exit (e.g. "/tmp/hosh.jfr").
+		 * Default: null, meaning that no recording is started.
+		 */
+		public static final String HOSH_JFR = "HOSH_JFR";
+
 	}
 
 	private Hosh() {
@@ -119,6 +154,7 @@ public class Hosh {
 	public static void main(String[] args) throws Exception {
 		String version = VersionLoader.loadVersion();
 		configureLogging();
+		configureFlightRecorder();
 		Logger logger = LoggerFactory.forEnclosingClass();
 
 		logger.info(() -> String.format("starting hosh %s", version));
@@ -150,6 +186,21 @@ public class Hosh {
 		logger.setLevel(Level.parse(logLevel));
 	}
 
+	// recording to the file specified by HOSH_JFR
+	// if and only if HOSH_JFR is defined
+	// the default JVM settings are used along with all events of hosh
+	private static void configureFlightRecorder() throws IOException, java.text.ParseException {
+		String destination = System.getenv(Environment.HOSH_JFR);
+		if (destination == null) {
+			return;
+		}
+		Recording recording = new Recording(Configuration.getConfiguration("default"));
+		recording.setName("hosh");
+		recording.setDestination(Paths.get(destination));
+		recording.setDumpOnExit(true);
+		recording.start();
+	}
+
 	private static ExitStatus run(Terminal terminal, String version, Logger logger, String[] args) {
 		State state = new State();
 		state.setCwd(Paths.get("."));
@@ -161,8 +212,6 @@ public class Hosh {
 		injector.setState(state);
 		injector.setTerminal(terminal);
 		bootstrap.registerAllBuiltins(state);
-		CommandResolver commandResolver = CommandResolvers.builtinsThenExternal(state);
-		Compiler compiler = new Compiler(commandResolver);
 		OutputChannel out = new CancellableChannel(new ConsoleChannel(terminal, Ansi.Style.NONE));
 		OutputChannel err = new CancellableChannel(new ConsoleChannel(terminal, Ansi.Style.FG_RED));
 		Interpreter interpreter = new Interpreter(state, injector);
@@ -187,10 +236,14 @@ public class Hosh {
 		List<String> remainingArgs = commandLine.getArgList();
 		if (remainingArgs.isEmpty()) {
 			welcome(out, version);
-			return repl(state, terminal, compiler, interpreter, injector, out, err, logger);
+			// commands are resolved on every keystroke, PATH is indexed only here
+			try (ExecutableIndex index = new ExecutableIndex(interpreter.getExecutor())) {
+				return repl(state, terminal, index, interpreter, injector, out, err, logger);
+			}
 		}
 		if (remainingArgs.size() == 1) {
 			String filePath = args[0];
+			Compiler compiler = new Compiler(CommandResolvers.builtinsThenExternal(state));
 			return script(filePath, compiler, interpreter, injector, out, err, logger);
 		}
 		System.err.println("hosh: too many scripts");
@@ -225,8 +278,10 @@ public class Hosh {
 		}
 	}
 
-	private static ExitStatus repl(State state, Terminal terminal, Compiler compiler, Interpreter interpreter, Injector injector,
+	private static ExitStatus repl(State state, Terminal terminal, ExecutableIndex index, Interpreter interpreter, Injector injector,
 								   OutputChannel out, OutputChannel err, Logger logger) {
+		CommandResolver commandResolver = CommandResolvers.builtinsThenExternal(state, index);
+		Compiler compiler = new Compiler(commandResolver);
 		History history = provideHistory();
 		injector.setHistory(history);
 		LineReader lineReader = LineReaderBuilder
@@ -235,11 +290,11 @@ public class Hosh {
 			.history(history)
 			.variable(LineReader.HISTORY_FILE, Paths.get(System.getProperty("user.home"), ".hosh_history"))
 			.completer(new AggregateCompleter(
-				new CommandCompleter(state),
-				new FileSystemCompleter(state),
+				new CommandCompleter(state, index),
+				new FileSystemCompleter(state, interpreter.getExecutor()),
 				new VariableExpansionCompleter(state)))
 			.terminal(terminal)
-			.highlighter(new HoshHighlighter(compiler))
+			.highlighter(new HoshHighlighter(commandResolver, interpreter.getExecutor()))
 			.build();
 		Prompt prompt = new Prompt();
 		ReplReader reader = new ReplReader(prompt, lineReader);
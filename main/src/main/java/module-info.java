@@ -23,6 +23,7 @@
  */
 module hosh {
 	requires java.logging;
+	requires jdk.jfr;
 
 	requires hosh.runtime;
 	requires hosh.spi;
@@ -241,6 +241,36 @@ class HoshIT {
 		assertThat(exitCode).isEqualTo(0);
 	}
 
+	@DisabledOnOs(OS.WINDOWS)
+	@Test
+	void pipelineOfExternalCommandsWithBinaryData() throws Exception {
+		// not valid UTF-8: it must reach 'wc' as it is
+		Path binary = temporaryFolder.newFile("data.bin").toPath();
+		Files.write(binary, new byte[]{(byte) 0xff, '\n', (byte) 0xfe, '\n'});
+		Path scriptPath = givenScript(
+			"cat " + binary + " | take 1 | wc -c" //
+		);
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		String output = consumeOutput(hosh);
+		int exitCode = hosh.waitFor();
+		assertThat(output.trim()).isEqualTo("2");
+		assertThat(exitCode).isEqualTo(0);
+	}
+
+	@DisabledOnOs(OS.WINDOWS)
+	@Test
+	void pipelineWriteManyRecordsToExternalCommand() throws Exception {
+		// more than the capacity of the OS pipes: 'cat' blocks writing to stdout until it is read
+		Path scriptPath = givenScript(
+			"rand | take 100000 | cat | drop 99999 | count" //
+		);
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		String output = consumeOutput(hosh);
+		int exitCode = hosh.waitFor();
+		assertThat(output).isEqualTo("1");
+		assertThat(exitCode).isEqualTo(0);
+	}
+
 	@DisabledOnOs(OS.WINDOWS)
 	@Bug(description = "regression test", issue = "https://github.com/dfa1/hosh/issues/212")
 	@Test
@@ -255,6 +285,32 @@ class HoshIT {
 		assertThat(exitCode).isEqualTo(0);
 	}
 
+	@DisabledOnOs(OS.WINDOWS)
+	@Test
+	void pipelineOfExternalCommandsThenInternalCommand() throws Exception {
+		Path scriptPath = givenScript(
+			"git --version | cat | cat | take 1 | count" //
+		);
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		int exitCode = hosh.waitFor();
+		String output = consumeOutput(hosh);
+		assertThat(output).isEqualTo("1");
+		assertThat(exitCode).isEqualTo(0);
+	}
+
+	@DisabledOnOs(OS.WINDOWS)
+	@Test
+	void pipelineOfExternalCommandsWithInfiniteProducer() throws Exception {
+		Path scriptPath = givenScript(
+			"yes | head -n 1" //
+		);
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		int exitCode = hosh.waitFor();
+		String output = consumeOutput(hosh);
+		assertThat(output).isEqualTo("y");
+		assertThat(exitCode).isEqualTo(0);
+	}
+
 	@Test
 	void missingScript() throws Exception {
 		Path scriptPath = Paths.get("missing.hosh");
@@ -351,6 +407,18 @@ class HoshIT {
 		assertThat(exitCode).isEqualTo(0);
 	}
 
+	@Test
+	void errorInConsumerOfInfiniteProducer() throws Exception {
+		Path scriptPath = givenScript(
+			"rand | { missing -> echo ${missing} }"//
+		);
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		String output = consumeOutput(hosh);
+		int exitCode = hosh.waitFor();
+		assertThat(output).contains("missing key 'missing'");
+		assertThat(exitCode).isEqualTo(1);
+	}
+
 	@Test
 	void benchmark() throws Exception {
 		Path scriptPath = givenScript(
@@ -495,6 +563,19 @@ class HoshIT {
 		assertThat(exitCode).isEqualTo(0);
 	}
 
+	@Test
+	void parallelLambda() throws Exception {
+		Path path = givenFolder("A.class", "B.class", "C.java");
+		Path scriptPath = givenScript("walk " + path.toAbsolutePath() + " | glob '*.class' | parallel 2 { path -> echo ${path} | take 1 }");
+		Process hosh = givenHoshProcess(scriptPath.toString());
+		String output = consumeOutput(hosh);
+		int exitCode = hosh.waitFor();
+		assertThat(output.lines()).containsExactlyInAnyOrder(
+			path.resolve("A.class").toString(),
+			path.resolve("B.class").toString());
+		assertThat(exitCode).isEqualTo(0);
+	}
+
 	@Test
 	void versionLongOption() throws Exception {
 		Process hosh = givenHoshProcess("--version");
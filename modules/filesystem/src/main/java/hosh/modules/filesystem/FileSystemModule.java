@@ -69,6 +69,7 @@ import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -230,7 +231,10 @@ public class FileSystemModule implements Module {
 				return ExitStatus.error();
 			}
 			try (Stream<String> lines = Files.lines(source, StandardCharsets.UTF_8)) {
-				lines.forEach(line -> out.send(Records.singleton(Keys.TEXT, Values.ofText(line))));
+				Iterator<String> iterator = lines.iterator();
+				while (iterator.hasNext() && !out.isDone()) {
+					out.send(Records.singleton(Keys.TEXT, Values.ofText(iterator.next())));
+				}
 				return ExitStatus.success();
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
@@ -287,13 +291,17 @@ public class FileSystemModule implements Module {
 				this.err = err;
 			}
 
+			// stop walking as soon as the consumer is done, even in directories without files
 			@Override
 			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-				return FileVisitResult.CONTINUE;
+				return out.isDone() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
 			}
 
 			@Override
 			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (out.isDone()) {
+					return FileVisitResult.TERMINATE;
+				}
 				out.send(Records
 						.builder()
 						.entry(Keys.PATH, Values.ofPath(file))
@@ -438,6 +438,21 @@ class FileSystemModuleTest {
 			then(err).shouldHaveNoInteractions();
 		}
 
+		@Test
+		void consumerDone() throws IOException {
+			File newFile = temporaryFolder.newFile("data.txt");
+			try (FileWriter writer = new FileWriter(newFile, StandardCharsets.UTF_8)) {
+				writer.write("a 1\n");
+				writer.write("b 2\n");
+			}
+			given(out.isDone()).willReturn(false, true);
+			ExitStatus exitStatus = sut.run(List.of(newFile.getAbsolutePath()), in, out, err);
+			assertThat(exitStatus).isSuccess();
+			then(out).should().send(Records.singleton(Keys.TEXT, Values.ofText("a 1")));
+			then(out).should(Mockito.never()).send(Records.singleton(Keys.TEXT, Values.ofText("b 2")));
+			then(err).shouldHaveNoInteractions();
+		}
+
 		@Test
 		void nonEmptyFileInCwd() throws IOException {
 			given(state.getCwd()).willReturn(temporaryFolder.toPath());
@@ -740,7 +755,8 @@ class FileSystemModuleTest {
 			ExitStatus exitStatus = sut.run(List.of("."), in, out, err);
 			assertThat(exitStatus).isSuccess();
 			then(in).shouldHaveNoInteractions();
-			then(out).shouldHaveNoInteractions();
+			then(out).should().isDone();
+			then(out).shouldHaveNoMoreInteractions();
 			then(err).shouldHaveNoInteractions();
 		}
 
@@ -755,6 +771,18 @@ class FileSystemModuleTest {
 			then(err).shouldHaveNoInteractions();
 		}
 
+		@Test
+		void consumerDone() throws IOException {
+			given(state.getCwd()).willReturn(temporaryFolder.toPath());
+			temporaryFolder.newFile("file.txt");
+			given(out.isDone()).willReturn(true);
+			ExitStatus exitStatus = sut.run(List.of("."), in, out, err);
+			assertThat(exitStatus).isSuccess();
+			then(in).shouldHaveNoInteractions();
+			then(out).should(Mockito.never()).send(Mockito.any());
+			then(err).shouldHaveNoInteractions();
+		}
+
 		@Test
 		void nonExistentRelativeDirectory() {
 			given(state.getCwd()).willReturn(temporaryFolder.toPath());
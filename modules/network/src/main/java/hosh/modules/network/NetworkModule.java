@@ -145,17 +145,29 @@ public class NetworkModule implements Module {
 			try {
 				HttpResponse<Stream<String>> response = requestor.send(request);
 				try (Stream<String> body = response.body()) {
-					body.forEach(line -> out.send(Records.singleton(Keys.TEXT, Values.ofText(line))));
+					Iterator<String> lines = body.iterator();
+					while (!out.isDone() && lines.hasNext()) {
+						out.send(Records.singleton(Keys.TEXT, Values.ofText(lines.next())));
+					}
 				}
 				return ExitStatus.success();
 			} catch (InterruptedException ie) {
 				Thread.currentThread().interrupt();
-				err.send(Errors.message("interrupted"));
-				return ExitStatus.error();
+				return cancelledOrError(out, err, Errors.message("interrupted"));
 			} catch (IOException ioe) {
-				err.send(Errors.message(ioe));
-				return ExitStatus.error();
+				return cancelledOrError(out, err, Errors.message(ioe));
+			} catch (UncheckedIOException uioe) {
+				return cancelledOrError(out, err, Errors.message(uioe.getCause()));
+			}
+		}
+
+		// interrupted while waiting for the network because the consumer is done: not an error
+		private ExitStatus cancelledOrError(OutputChannel out, OutputChannel err, Record error) {
+			if (out.isDone()) {
+				return ExitStatus.success();
 			}
+			err.send(error);
+			return ExitStatus.error();
 		}
 
 		interface Requestor {
@@ -150,7 +150,8 @@ class NetworkModuleTest {
 			ExitStatus exitStatus = sut.run(List.of("https://example.org"), in, out, err);
 			assertThat(exitStatus).isError();
 			then(in).shouldHaveNoInteractions();
-			then(out).shouldHaveNoInteractions();
+			then(out).should().isDone();
+			then(out).shouldHaveNoMoreInteractions();
 			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("interrupted")));
 			assertThat(withThread.isInterrupted()).isTrue();
 		}
@@ -161,8 +162,31 @@ class NetworkModuleTest {
 			ExitStatus exitStatus = sut.run(List.of("https://example.org"), in, out, err);
 			assertThat(exitStatus).isError();
 			then(in).shouldHaveNoInteractions();
-			then(out).shouldHaveNoInteractions();
+			then(out).should().isDone();
+			then(out).shouldHaveNoMoreInteractions();
 			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("simulated")));
 		}
+
+		@Test
+		void consumerDone() throws InterruptedException, IOException {
+			given(requestor.send(Mockito.any())).willReturn(response);
+			given(response.body()).willReturn(Stream.of("line1", "line2"));
+			given(out.isDone()).willReturn(false, true);
+			ExitStatus exitStatus = sut.run(List.of("https://example.org"), in, out, err);
+			assertThat(exitStatus).isSuccess();
+			then(out).should().send(Records.singleton(Keys.TEXT, Values.ofText("line1")));
+			then(out).should(Mockito.never()).send(Records.singleton(Keys.TEXT, Values.ofText("line2")));
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void interruptedBecauseConsumerIsDone() throws InterruptedException, IOException {
+			given(requestor.send(Mockito.any())).willThrow(new InterruptedException());
+			given(out.isDone()).willReturn(true);
+			ExitStatus exitStatus = sut.run(List.of("https://example.org"), in, out, err);
+			assertThat(exitStatus).isSuccess();
+			then(err).shouldHaveNoInteractions();
+			assertThat(withThread.isInterrupted()).isTrue();
+		}
 	}
 }
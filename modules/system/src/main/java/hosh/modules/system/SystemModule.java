@@ -66,6 +66,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -90,6 +92,9 @@ public class SystemModule implements Module {
 		registry.registerCommand("sleep", Sleep::new);
 		registry.registerCommand("withTime", WithTime::new);
 		registry.registerCommand("withTimeout", WithTimeout::new);
+		registry.registerCommand("withStats", WithStats::new);
+		registry.registerCommand("parallel", Parallel::new);
+		registry.registerCommand("partition", Partition::new);
 		registry.registerCommand("ps", ProcessList::new);
 		registry.registerCommand("kill", KillProcess::new);
 		registry.registerCommand("err", Err::new);
@@ -376,6 +381,117 @@ public class SystemModule implements Module {
 		}
 	}
 
+	@Description("measure records, bytes and time spent by each stage of a pipeline")
+	@Examples({
+		@Example(command = "withStats { rand | take 100 | sort rand }", description = "find which stage of the pipeline is the bottleneck"),
+		@Example(command = "withStats { walk . | glob '*.java' | count }", description = "records flowing through each stage of the pipeline"),
+	})
+	public static class WithStats implements CommandWrapper {
+
+		private NestedCommand nestedCommand;
+
+		@Override
+		public void setNestedCommand(NestedCommand nestedCommand) {
+			this.nestedCommand = nestedCommand;
+		}
+
+		@Override
+		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+			if (args.size() != 0) {
+				err.send(Errors.usage("withStats { ... }"));
+				return ExitStatus.error();
+			}
+			// stats of nested pipelines are sent by several threads
+			Queue<Record> stats = new ConcurrentLinkedQueue<>();
+			ExitStatus exitStatus = nestedCommand.runWithStats(stats::add);
+			for (Record record : stats) {
+				out.send(record);
+			}
+			return exitStatus;
+		}
+	}
+
+	@Description("run several copies of inner command, each one processing a share of the input records")
+	@Examples({
+		@Example(command = "lines access.log | parallel 4 { regex text '(?<ip>[0-9.]+) .*' } | count", description = "parse lines using 4 threads, keeping the order of the lines"),
+		@Example(command = "walk . | parallel 8 unordered { glob '*.java' } | count", description = "filter paths using 8 threads, sending results as soon as they are available"),
+		@Example(command = "walk . | glob '*.class' | parallel 4 { path -> rm ${path} }", description = "delete paths using 4 threads, one path at time for each thread (like 'xargs -P 4')"),
+	})
+	public static class Parallel implements CommandWrapper {
+
+		private NestedCommand nestedCommand;
+
+		@Override
+		public void setNestedCommand(NestedCommand nestedCommand) {
+			this.nestedCommand = nestedCommand;
+		}
+
+		@Override
+		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+			if (args.size() != 1 && args.size() != 2) {
+				err.send(Errors.usage("parallel number [ordered|unordered] { ... }"));
+				return ExitStatus.error();
+			}
+			int copies;
+			try {
+				copies = Integer.parseInt(args.get(0));
+			} catch (NumberFormatException e) {
+				err.send(Errors.message("not a valid number: '%s'", args.get(0)));
+				return ExitStatus.error();
+			}
+			if (copies <= 0) {
+				err.send(Errors.message("number must be > 0"));
+				return ExitStatus.error();
+			}
+			String mode = args.size() == 2 ? args.get(1) : "ordered";
+			switch (mode) {
+				case "ordered":
+					return nestedCommand.runParallel(copies, true);
+				case "unordered":
+					return nestedCommand.runParallel(copies, false);
+				default:
+					err.send(Errors.usage("parallel number [ordered|unordered] { ... }"));
+					return ExitStatus.error();
+			}
+		}
+	}
+
+	@Description("run several copies of inner command, sending all records with the same value for key to the same copy")
+	@Examples({
+		@Example(command = "lines access.log | regex text '(?<ip>[0-9.]+) .*' | partition ip 4 { freq ip }", description = "count requests by IP address using 4 threads"),
+		@Example(command = "walk . | partition path 2 { distinct path }", description = "distinct values using 2 threads"),
+	})
+	public static class Partition implements CommandWrapper {
+
+		private NestedCommand nestedCommand;
+
+		@Override
+		public void setNestedCommand(NestedCommand nestedCommand) {
+			this.nestedCommand = nestedCommand;
+		}
+
+		@Override
+		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+			if (args.size() != 2) {
+				err.send(Errors.usage("partition key number { ... }"));
+				return ExitStatus.error();
+			}
+			Key key = Keys.of(args.get(0));
+			int partitions;
+			try {
+				partitions = Integer.parseInt(args.get(1));
+			} catch (NumberFormatException e) {
+				err.send(Errors.message("not a valid number: '%s'", args.get(1)));
+				return ExitStatus.error();
+			}
+			if (partitions <= 0) {
+				err.send(Errors.message("number must be > 0"));
+				return ExitStatus.error();
+			}
+			return nestedCommand.runPartitioned(key, partitions);
+		}
+	}
+
 	@Description("process status")
 	@Examples({
 		@Example(command = "ps", description = "list all running process in the system as the current user"),
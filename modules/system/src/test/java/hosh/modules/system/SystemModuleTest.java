@@ -798,6 +798,191 @@ class SystemModuleTest {
 		}
 	}
 
+	@Nested
+	@ExtendWith(MockitoExtension.class)
+	class WithStatsTest {
+
+		@Mock
+		InputChannel in;
+
+		@Mock
+		OutputChannel out;
+
+		@Mock
+		OutputChannel err;
+
+		@Mock(stubOnly = true)
+		CommandWrapper.NestedCommand nestedCommand;
+
+		@Mock(stubOnly = true)
+		Record stats;
+
+		@InjectMocks
+		SystemModule.WithStats sut;
+
+		@Test
+		void noArgs() {
+			ExitStatus nestedExitStatus = ExitStatus.of(42);
+			given(nestedCommand.runWithStats(any())).willAnswer(invocation -> {
+				OutputChannel channel = invocation.getArgument(0);
+				channel.send(stats);
+				return nestedExitStatus;
+			});
+			ExitStatus result = sut.run(List.of(), in, out, err);
+			assertThat(result).isEqualTo(nestedExitStatus);
+			then(in).shouldHaveNoInteractions();
+			then(out).should().send(stats);
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void oneArg() {
+			ExitStatus result = sut.run(List.of("arg"), in, out, err);
+			assertThat(result).isError();
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("usage: withStats { ... }")));
+		}
+	}
+
+	@Nested
+	@ExtendWith(MockitoExtension.class)
+	class ParallelTest {
+
+		@Mock
+		InputChannel in;
+
+		@Mock
+		OutputChannel out;
+
+		@Mock
+		OutputChannel err;
+
+		@Mock
+		CommandWrapper.NestedCommand nestedCommand;
+
+		@InjectMocks
+		SystemModule.Parallel sut;
+
+		@Test
+		void noArgs() {
+			ExitStatus result = sut.run(List.of(), in, out, err);
+			assertThat(result).isError();
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("usage: parallel number [ordered|unordered] { ... }")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void ordered() {
+			given(nestedCommand.runParallel(4, true)).willReturn(ExitStatus.success());
+			ExitStatus result = sut.run(List.of("4"), in, out, err);
+			assertThat(result).isSuccess();
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void explicitlyOrdered() {
+			given(nestedCommand.runParallel(2, true)).willReturn(ExitStatus.success());
+			ExitStatus result = sut.run(List.of("2", "ordered"), in, out, err);
+			assertThat(result).isSuccess();
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void unordered() {
+			given(nestedCommand.runParallel(8, false)).willReturn(ExitStatus.of(42));
+			ExitStatus result = sut.run(List.of("8", "unordered"), in, out, err);
+			assertThat(result).isEqualTo(ExitStatus.of(42));
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void invalidMode() {
+			ExitStatus result = sut.run(List.of("8", "shuffled"), in, out, err);
+			assertThat(result).isError();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("usage: parallel number [ordered|unordered] { ... }")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void invalidNumber() {
+			ExitStatus result = sut.run(List.of("a"), in, out, err);
+			assertThat(result).isError();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("not a valid number: 'a'")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void zero() {
+			ExitStatus result = sut.run(List.of("0"), in, out, err);
+			assertThat(result).isError();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("number must be > 0")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+	}
+
+	@Nested
+	@ExtendWith(MockitoExtension.class)
+	class PartitionTest {
+
+		@Mock
+		InputChannel in;
+
+		@Mock
+		OutputChannel out;
+
+		@Mock
+		OutputChannel err;
+
+		@Mock
+		CommandWrapper.NestedCommand nestedCommand;
+
+		@InjectMocks
+		SystemModule.Partition sut;
+
+		@Test
+		void noArgs() {
+			ExitStatus result = sut.run(List.of(), in, out, err);
+			assertThat(result).isError();
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("usage: partition key number { ... }")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void keyAndNumber() {
+			given(nestedCommand.runPartitioned(Keys.of("ip"), 4)).willReturn(ExitStatus.of(42));
+			ExitStatus result = sut.run(List.of("ip", "4"), in, out, err);
+			assertThat(result).isEqualTo(ExitStatus.of(42));
+			then(in).shouldHaveNoInteractions();
+			then(out).shouldHaveNoInteractions();
+			then(err).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void invalidNumber() {
+			ExitStatus result = sut.run(List.of("ip", "a"), in, out, err);
+			assertThat(result).isError();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("not a valid number: 'a'")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+
+		@Test
+		void zero() {
+			ExitStatus result = sut.run(List.of("ip", "0"), in, out, err);
+			assertThat(result).isError();
+			then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("number must be > 0")));
+			then(nestedCommand).shouldHaveNoInteractions();
+		}
+	}
+
 	@Nested
 	@ExtendWith(MockitoExtension.class)
 	class WithTimeoutTest {
@@ -39,6 +39,8 @@ import hosh.spi.OutputChannel;
 import hosh.spi.Record;
 import hosh.spi.Record.Entry;
 import hosh.spi.Records;
+import hosh.spi.Transformer;
+import hosh.spi.Transformer.Transformation;
 import hosh.spi.Value;
 import hosh.spi.Values;
 
@@ -94,19 +96,19 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(description = "select some keys from TSV file", command = "lines file.tsv | split text '\\t' | select 1 2 3"),
 	})
-	public static class Select implements Command {
+	public static class Select implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			List<Key> keys = args.stream().map(Keys::of).collect(Collectors.toUnmodifiableList());
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				Records.Builder builder = Records.builder();
 				for (Key k : keys) {
 					record.value(k).ifPresent(v -> builder.entry(k, v)); // side effect
 				}
 				out.send(builder.build());
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -114,23 +116,23 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(description = "tab separated file to records", command = "lines file.tsv | split text '\\t'"),
 	})
-	public static class Split implements Command {
+	public static class Split implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 2) {
 				err.send(Errors.usage("split key regex"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
 			Pattern pattern = Pattern.compile(args.get(1));
 			Map<Integer, Key> cachedKeys = new HashMap<>();
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				record.value(key)
 					.flatMap(v -> v.unwrap(String.class))
 					.ifPresent(str -> out.send(split(pattern, str, cachedKeys))); // side effect
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 
 		private Record split(Pattern pattern, String str, Map<Integer, Key> cachedKeys) {
@@ -153,17 +155,17 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(description = "record to string", command = "lines file.tsv | split text '\\t' | join ','"),
 	})
-	public static class Join implements Command {
+	public static class Join implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("join separator"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			String sep = args.get(0);
 			Locale locale = Locale.getDefault();
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				StringWriter sw = new StringWriter();
 				PrintWriter pw = new PrintWriter(sw);
 				Iterator<Value> values = record.values().iterator();
@@ -178,8 +180,8 @@ public class TextModule implements Module {
 					value.print(pw, locale);
 				}
 				out.send(Records.singleton(Keys.TEXT, Values.ofText(sw.toString())));
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -187,19 +189,19 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines pom.xml | trim text", description = "trim")
 	})
-	public static class Trim implements Command {
+	public static class Trim implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("trim key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				out.send(trimByKey(record, key));
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 
 		private Record trimByKey(Record record, Key key) {
@@ -228,18 +230,18 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(description = "parse k=v format into record", command = "echo \"aaa=bbb\" | regex value '(?<name>.+)=(?<value>.+)' | schema"),
 	})
-	public static class Regex implements Command {
+	public static class Regex implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 2) {
 				err.send(Errors.usage("regex key regex"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
 			Pattern pattern = Pattern.compile(args.get(1));
 			List<String> groupNames = extractNamedGroups(args.get(1));
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				record.value(key).ifPresent(v -> {
 					StringWriter sw = new StringWriter();
 					PrintWriter pw = new PrintWriter(sw);
@@ -253,8 +255,8 @@ public class TextModule implements Module {
 						out.send(builder.build());
 					}
 				});
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 
 		private List<String> extractNamedGroups(String pattern) {
@@ -273,19 +275,19 @@ public class TextModule implements Module {
 		@Example(command = "ls | schema", description = "output 'path size'"),
 		@Example(command = "ls | count | schema", description = "output 'count'"),
 	})
-	public static class Schema implements Command {
+	public static class Schema implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 0) {
 				err.send(Errors.usage("schema"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				String schema = record.keys().map(Key::name).collect(Collectors.joining(" "));
 				out.send(Records.singleton(Keys.of("schema"), Values.ofText(schema)));
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -293,24 +295,24 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | filter text '.*The.*' ", description = "output only lines containing 'The' somewhere"),
 	})
-	public static class Filter implements Command {
+	public static class Filter implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 2) {
 				err.send(Errors.usage("filter key regex"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
 			Pattern pattern = Pattern.compile(args.get(1));
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				// this could be allocation intensive but let's see
 				record.value(key)
 					.flatMap(v -> v.unwrap(String.class))
 					.filter(s -> pattern.matcher(s).matches())
 					.ifPresent(v -> out.send(record)); // side effect
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -318,20 +320,20 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | enumerate", description = "similar to 'cat -n'"),
 	})
-	public static class Enumerate implements Command {
+	public static class Enumerate implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 0) {
 				err.send(Errors.usage("enumerate"));
-				return ExitStatus.error();
-			}
-			long index = 1;
-			for (Record record : InputChannel.iterate(in)) {
-				out.send(record.prepend(Keys.INDEX, Values.ofNumeric(index)));
-				index += 1;
+				return Optional.empty();
 			}
-			return ExitStatus.success();
+			long[] index = {1};
+			return Optional.of((record, out) -> {
+				out.send(record.prepend(Keys.INDEX, Values.ofNumeric(index[0])));
+				index[0] += 1;
+				return true;
+			});
 		}
 	}
 
@@ -339,7 +341,7 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "watch | timestamp", description = "tag each event with current timestamp"),
 	})
-	public static class Timestamp implements Command {
+	public static class Timestamp implements Transformer {
 
 		private Clock clock = Clock.systemUTC();
 
@@ -348,15 +350,15 @@ public class TextModule implements Module {
 		}
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 0) {
 				err.send(Errors.usage("timestamp"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				out.send(record.prepend(Keys.TIMESTAMP, Values.ofInstant(clock.instant())));
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -364,25 +366,25 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | distinct text", description = "output all unique lines in 'file.txt'")
 	})
-	public static class Distinct implements Command {
+	public static class Distinct implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("distinct key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Set<Value> seen = new HashSet<>();
 			Key key = Keys.of(args.get(0));
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				record.value(key).ifPresent(v -> {
 					boolean neverSeenBefore = seen.add(v);
 					if (neverSeenBefore) {
 						out.send(record);
 					}
 				});
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -390,25 +392,25 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | duplicated text", description = "output all non-unique lines in 'file.txt'")
 	})
-	public static class Duplicated implements Command {
+	public static class Duplicated implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("duplicated key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Set<Value> seen = new HashSet<>();
 			Key key = Keys.of(args.get(0));
-			for (Record record : InputChannel.iterate(in)) {
+			return Optional.of((record, out) -> {
 				record.value(key).ifPresent(v -> {
 					boolean seenBefore = !seen.add(v);
 					if (seenBefore) {
 						out.send(record);
 					}
 				});
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -418,16 +420,16 @@ public class TextModule implements Module {
 		@Example(command = "lines file.txt | sort text desc", description = "sort lines in 'file.txt' in descending order"),
 		@Example(command = "lines file.txt | sort text asc", description = "sort lines in 'file.txt' in ascending order")
 	})
-	public static class Sort implements Command {
+	public static class Sort implements Transformer {
 
 		private static final String ASC = "asc";
 		private static final String DESC = "desc";
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() == 0 || args.size() > 2) {
 				err.send(Errors.usage("sort key [%s|%s]", ASC, DESC));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			String direction;
 			Key key = Keys.of(args.get(0));
@@ -438,15 +440,26 @@ public class TextModule implements Module {
 				Optional<String> validate = validate(order);
 				if (validate.isEmpty()) {
 					err.send(Errors.message("must be '%s' or '%s'", ASC, DESC));
-					return ExitStatus.error();
+					return Optional.empty();
 				}
 				direction = validate.get();
 			}
+			Comparator<Record> comparator = order(key, direction);
 			List<Record> records = new ArrayList<>();
-			accumulate(in, records);
-			sortBy(order(key, direction), records);
-			output(out, records);
-			return ExitStatus.success();
+			return Optional.of(new Transformation() {
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					records.add(record);
+					return true;
+				}
+
+				@Override
+				public void end(OutputChannel out) {
+					sortBy(comparator, records);
+					output(out, records);
+				}
+			});
 		}
 
 		private Optional<String> validate(String s) {
@@ -459,12 +472,6 @@ public class TextModule implements Module {
 			}
 		}
 
-		private void accumulate(InputChannel in, List<Record> records) {
-			for (Record record : InputChannel.iterate(in)) {
-				records.add(record);
-			}
-		}
-
 		private Comparator<Record> order(Key key, String direction) {
 			Comparator<Record> comparator = Comparator.comparing(record -> record.value(key).orElse(Values.none()), Values.Comparators.noneLast(Comparator.naturalOrder()));
 			if (direction.equals(DESC)) {
@@ -489,27 +496,33 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | take 1", description = "output first line of 'file.txt'")
 	})
-	public static class Take implements Command {
+	public static class Take implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public boolean isPassThrough() {
+			return true;
+		}
+
+		@Override
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("take number"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			long take = Long.parseLong(args.get(0));
 			if (take < 0) {
 				err.send(Errors.message("number must be >= 0"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
-			for (Record record : InputChannel.iterate(in)) {
-				if (take == 0) {
-					break;
+			long[] remaining = {take};
+			return Optional.of((record, out) -> {
+				if (remaining[0] == 0) {
+					return false;
 				}
 				out.send(record);
-				take--;
-			}
-			return ExitStatus.success();
+				remaining[0]--;
+				return remaining[0] > 0;
+			});
 		}
 	}
 
@@ -517,27 +530,33 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | drop 1", description = "output 'file.txt', except the first line")
 	})
-	public static class Drop implements Command {
+	public static class Drop implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public boolean isPassThrough() {
+			return true;
+		}
+
+		@Override
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("drop number"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			long drop = Long.parseLong(args.get(0));
 			if (drop < 0) {
 				err.send(Errors.message("number must be >= 0"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
-			for (Record record : InputChannel.iterate(in)) {
-				if (drop > 0) {
-					drop--;
+			long[] remaining = {drop};
+			return Optional.of((record, out) -> {
+				if (remaining[0] > 0) {
+					remaining[0]--;
 				} else {
 					out.send(record);
 				}
-			}
-			return ExitStatus.success();
+				return true;
+			});
 		}
 	}
 
@@ -545,22 +564,38 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines file.txt | last 1", description = "output only last line of 'file.txt'")
 	})
-	public static class Last implements Command {
+	public static class Last implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public boolean isPassThrough() {
+			return true;
+		}
+
+		@Override
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("last number"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			long n = Long.parseLong(args.get(0));
 			if (n < 1) {
 				err.send(Errors.message("number must be >= 1"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
-			Queue<Record> queue = keepLastRecords(in, n);
-			output(out, queue);
-			return ExitStatus.success();
+			Queue<Record> queue = new LinkedList<>();
+			return Optional.of(new Transformation() {
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					keepLastRecords(queue, record, n);
+					return true;
+				}
+
+				@Override
+				public void end(OutputChannel out) {
+					output(out, queue);
+				}
+			});
 		}
 
 		private void output(OutputChannel out, Queue<Record> queue) {
@@ -569,15 +604,11 @@ public class TextModule implements Module {
 			}
 		}
 
-		private Queue<Record> keepLastRecords(InputChannel in, long n) {
-			Queue<Record> queue = new LinkedList<>();
-			for (Record record : InputChannel.iterate(in)) {
-				queue.add(record);
-				if (queue.size() > n) {
-					queue.remove();
-				}
+		private void keepLastRecords(Queue<Record> queue, Record record, long n) {
+			queue.add(record);
+			if (queue.size() > n) {
+				queue.remove();
 			}
-			return queue;
 		}
 	}
 
@@ -608,20 +639,29 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "rand | take 3 | count", description = "output 3")
 	})
-	public static class Count implements Command {
+	public static class Count implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 0) {
 				err.send(Errors.usage("count"));
-				return ExitStatus.error();
-			}
-			long count = 0;
-			for (Record ignored : InputChannel.iterate(in)) {
-				count += 1;
+				return Optional.empty();
 			}
-			out.send(Records.singleton(Keys.COUNT, Values.ofNumeric(count)));
-			return ExitStatus.success();
+			return Optional.of(new Transformation() {
+
+				private long count = 0;
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					count += 1;
+					return true;
+				}
+
+				@Override
+				public void end(OutputChannel out) {
+					out.send(Records.singleton(Keys.COUNT, Values.ofNumeric(count)));
+				}
+			});
 		}
 	}
 
@@ -630,29 +670,38 @@ public class TextModule implements Module {
 		@Example(command = "ls /tmp | sum size", description = "calculate size of /tmp directory (non-recursively)"),
 		@Example(command = "walk /tmp | sum size", description = "calculate size of /tmp directory (recursively)")
 	})
-	public static class Sum implements Command {
+	public static class Sum implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("sum key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
-			Optional<Value> result = Optional.empty();
-			for (Record record : InputChannel.iterate(in)) {
-				Optional<Value> value = record.value(key);
-				if (value.isEmpty()) {
-					continue;
+			return Optional.of(new Transformation() {
+
+				private Optional<Value> result = Optional.empty();
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					Optional<Value> value = record.value(key);
+					if (value.isEmpty()) {
+						return true;
+					}
+					if (result.isEmpty()) {
+						result = value;
+					} else {
+						result = result.flatMap(v -> v.merge(value.get()));
+					}
+					return true;
 				}
-				if (result.isEmpty()) {
-					result = value;
-				} else {
-					result = result.flatMap(v -> v.merge(value.get()));
+
+				@Override
+				public void end(OutputChannel out) {
+					out.send(Records.singleton(key, result.orElse(Values.none())));
 				}
-			}
-			out.send(Records.singleton(key, result.orElse(Values.none())));
-			return ExitStatus.success();
+			});
 		}
 	}
 
@@ -660,27 +709,30 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "lines files.txt | freq text", description = "replaces 'sort file.txt | uniq -c | sort -rn' in UNIX"),
 	})
-	public static class Freq implements Command {
+	public static class Freq implements Transformer {
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("freq key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
-			Map<Value, Long> countByValue = countByValue(in, key);
-			output(out, countByValue);
-			return ExitStatus.success();
-		}
+			Map<Value, Long> countByValue = new HashMap<>();
+			return Optional.of(new Transformation() {
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					record.value(key)
+						.ifPresent(value -> countByValue.compute(value, (k, count) -> count == null ? 1 : count + 1));
+					return true;
+				}
 
-		private Map<Value, Long> countByValue(InputChannel in, Key key) {
-			Map<Value, Long> result = new HashMap<>();
-			for (Record record : InputChannel.iterate(in)) {
-				record.value(key)
-					.ifPresent(value -> result.compute(value, (k, count) -> count == null ? 1 : count + 1));
-			}
-			return result;
+				@Override
+				public void end(OutputChannel out) {
+					output(out, countByValue);
+				}
+			});
 		}
 
 		private void output(OutputChannel out, Map<Value, Long> countByValue) {
@@ -699,32 +751,41 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "ps | min timestamp", description = "calculate minimum timestamp"),
 	})
-	public static class Min implements Command {
+	public static class Min implements Transformer {
 
 		public static final Key MIN = Keys.of("min");
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("min key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
 			Comparator<Value> comparator = Values.Comparators.noneLast(Comparator.naturalOrder());
-			Value min = Values.none();
-			for (Record record : InputChannel.iterate(in)) {
-				Optional<Value> optionalValue = record.value(key);
-				if (optionalValue.isPresent()) {
-					Value current = optionalValue.get();
-					if (min == null) {
-						min = current;
-					} else {
-						min = comparator.compare(current, min) < 0 ? current : min;
+			return Optional.of(new Transformation() {
+
+				private Value min = Values.none();
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					Optional<Value> optionalValue = record.value(key);
+					if (optionalValue.isPresent()) {
+						Value current = optionalValue.get();
+						if (min == null) {
+							min = current;
+						} else {
+							min = comparator.compare(current, min) < 0 ? current : min;
+						}
 					}
+					return true;
 				}
-			}
-			out.send(Records.singleton(MIN, min));
-			return ExitStatus.success();
+
+				@Override
+				public void end(OutputChannel out) {
+					out.send(Records.singleton(MIN, min));
+				}
+			});
 		}
 
 	}
@@ -734,32 +795,41 @@ public class TextModule implements Module {
 	@Examples({
 		@Example(command = "ps | max pid", description = "calculate max pid"),
 	})
-	public static class Max implements Command {
+	public static class Max implements Transformer {
 
 		public static final Key MAX = Keys.of("max");
 
 		@Override
-		public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		public Optional<Transformation> prepare(List<String> args, OutputChannel err) {
 			if (args.size() != 1) {
 				err.send(Errors.usage("max key"));
-				return ExitStatus.error();
+				return Optional.empty();
 			}
 			Key key = Keys.of(args.get(0));
-			Value max = Values.none();
 			Comparator<Value> comparator = Values.Comparators.noneFirst(Comparator.naturalOrder());
-			for (Record record : InputChannel.iterate(in)) {
-				Optional<Value> optionalValue = record.value(key);
-				if (optionalValue.isPresent()) {
-					Value current = optionalValue.get();
-					if (max == null) {
-						max = current;
-					} else {
-						max = comparator.compare(current, max) > 0 ? current : max;
+			return Optional.of(new Transformation() {
+
+				private Value max = Values.none();
+
+				@Override
+				public boolean apply(Record record, OutputChannel out) {
+					Optional<Value> optionalValue = record.value(key);
+					if (optionalValue.isPresent()) {
+						Value current = optionalValue.get();
+						if (max == null) {
+							max = current;
+						} else {
+							max = comparator.compare(current, max) > 0 ? current : max;
+						}
 					}
+					return true;
 				}
-			}
-			out.send(Records.singleton(MAX, max));
-			return ExitStatus.success();
+
+				@Override
+				public void end(OutputChannel out) {
+					out.send(Records.singleton(MAX, max));
+				}
+			});
 		}
 
 	}
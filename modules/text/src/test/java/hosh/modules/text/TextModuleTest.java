@@ -997,6 +997,11 @@ class TextModuleTest {
 		@InjectMocks
 		Drop sut;
 
+		@Test
+		void passThrough() {
+			assertThat(sut.isPassThrough()).isTrue();
+		}
+
 		@SuppressWarnings("unchecked")
 		@Test
 		void dropZero() {
@@ -1057,6 +1062,11 @@ class TextModuleTest {
 		@InjectMocks
 		Take sut;
 
+		@Test
+		void passThrough() {
+			assertThat(sut.isPassThrough()).isTrue();
+		}
+
 		@Test
 		void takeZero() {
 			given(in.recv()).willReturn(Optional.empty());
@@ -1142,6 +1152,11 @@ class TextModuleTest {
 		@InjectMocks
 		TextModule.Last sut;
 
+		@Test
+		void passThrough() {
+			assertThat(sut.isPassThrough()).isTrue();
+		}
+
 		@Test
 		void lastNoArgs() {
 			ExitStatus exitStatus = sut.run(List.of(), in, out, err);
@@ -32,6 +32,7 @@ command
 wrapped
 	: invocation OPEN_CURLY stmt CLOSE_CURLY
 	| invocation OPEN_CURLY CLOSE_CURLY // will be rejected by compiler
+	| invocation lambda
 	| wrapped CLOSE_CURLY // will be rejected by compiler
 	;
 
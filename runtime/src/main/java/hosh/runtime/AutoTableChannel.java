@@ -89,10 +89,18 @@ public class AutoTableChannel implements OutputChannel {
 
 	public void end() {
 		logger.info(() -> "autotable: end with overflow=" + overflow);
+		Events.AutoTableEvent event = new Events.AutoTableEvent();
+		event.begin();
 		if (!overflow) {
 			Map<Key, Integer> paddings = calculatePaddings(records);
 			outputTable(outputChannel, records, paddings);
 		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.records = records.size();
+			event.overflow = overflow;
+			event.commit();
+		}
 		records.clear();
 		overflow = false;
 	}
@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.LoggerFactory;
+import hosh.spi.Record;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Micro-batched hand-off between producer and consumer.
+ * <p>
+ * The producer fills a batch that is transferred to the consumer when it is full
+ * or when its oldest record is older than the maximum latency. The consumer
+ * drains a whole batch before waiting again, then gives the empty batch back to the producer.
+ * <p>
+ * A consumer that is waiting for more than the maximum latency takes the partial batch
+ * by itself; once both sides are idle the next record is handed off immediately,
+ * so interactive pipelines still show results as soon as possible.
+ */
+public class BatchingChannel implements Pipe {
+
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	public static final Duration DEFAULT_MAX_LATENCY = Duration.ofMillis(10);
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	private final List<Record> poisonPill = new ArrayList<>(0);
+
+	private final LinkedTransferQueue<List<Record>> queue = new LinkedTransferQueue<>();
+
+	// an already drained batch, given back by the consumer
+	private final AtomicReference<List<Record>> spare = new AtomicReference<>();
+
+	private final int batchSize;
+
+	private final long maxLatencyNanos;
+
+	// guards pending, pendingSinceNanos and consumerParked
+	private final Object lock = new Object();
+
+	private List<Record> pending;
+
+	private long pendingSinceNanos;
+
+	private boolean consumerParked;
+
+	// consumer side only
+	private List<Record> current = List.of();
+
+	private int index;
+
+	private volatile boolean done;
+
+	public BatchingChannel() {
+		this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_LATENCY);
+	}
+
+	public BatchingChannel(int batchSize, Duration maxLatency) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size must be >= 1");
+		}
+		this.batchSize = batchSize;
+		this.maxLatencyNanos = maxLatency.toNanos();
+		this.pending = new ArrayList<>(batchSize);
+	}
+
+	@Override
+	public Optional<Record> recv() {
+		if (index < current.size()) {
+			return Optional.of(current.get(index++));
+		}
+		recycle(current);
+		Events.ChannelWaitEvent event = new Events.ChannelWaitEvent();
+		event.begin();
+		try {
+			List<Record> batch = nextBatch();
+			commit(event, "recv");
+			if (batch == poisonPill) {
+				LOGGER.finer("got poison pill");
+				current = List.of();
+				return Optional.empty();
+			}
+			LOGGER.finer(() -> String.format("got batch of %d records", batch.size()));
+			current = batch;
+			index = 1;
+			return Optional.of(batch.get(0));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			current = List.of();
+			return Optional.empty();
+		}
+	}
+
+	private List<Record> nextBatch() throws InterruptedException {
+		while (true) {
+			List<Record> batch = queue.poll(maxLatencyNanos, TimeUnit.NANOSECONDS);
+			if (batch == null) {
+				batch = takePendingOrPark();
+			}
+			if (batch == null) {
+				// producer is idle too: it will hand off the next record immediately
+				batch = queue.take();
+			}
+			if (!batch.isEmpty() || batch == poisonPill) {
+				return batch;
+			}
+		}
+	}
+
+	private List<Record> takePendingOrPark() {
+		synchronized (lock) {
+			if (pending.isEmpty()) {
+				consumerParked = true;
+				return null;
+			}
+			return swapPending();
+		}
+	}
+
+	@Override
+	public void send(Record record) {
+		if (done) {
+			throw new PipelineChannel.ProducerPoisonPill();
+		}
+		List<Record> ready = null;
+		synchronized (lock) {
+			long now = System.nanoTime();
+			if (pending.isEmpty()) {
+				pendingSinceNanos = now;
+			}
+			pending.add(record);
+			if (consumerParked || pending.size() >= batchSize || now - pendingSinceNanos >= maxLatencyNanos) {
+				consumerParked = false;
+				ready = swapPending();
+			}
+		}
+		if (ready != null) {
+			transfer(ready);
+		}
+	}
+
+	private void transfer(List<Record> batch) {
+		LOGGER.finer(() -> String.format("sending batch of %d records", batch.size()));
+		Events.ChannelWaitEvent event = new Events.ChannelWaitEvent();
+		event.begin();
+		try {
+			while (!queue.tryTransfer(batch, maxLatencyNanos, TimeUnit.NANOSECONDS)) {
+				if (done) {
+					throw new PipelineChannel.ProducerPoisonPill();
+				}
+			}
+			commit(event, "send");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void commit(Events.ChannelWaitEvent event, String operation) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.channel = "batching";
+			event.operation = operation;
+			event.commit();
+		}
+	}
+
+	// must be called while holding lock
+	private List<Record> swapPending() {
+		List<Record> result = pending;
+		List<Record> recycled = spare.getAndSet(null);
+		pending = recycled != null ? recycled : new ArrayList<>(batchSize);
+		return result;
+	}
+
+	private void recycle(List<Record> batch) {
+		if (batch instanceof ArrayList && batch != poisonPill) {
+			batch.clear();
+			spare.lazySet(batch);
+		}
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public void stopProducer() {
+		LOGGER.fine("producer stop requested");
+		done = true;
+	}
+
+	@Override
+	public void stopConsumer() {
+		LOGGER.fine("consumer stop requested");
+		done = true;
+		synchronized (lock) {
+			if (!pending.isEmpty()) {
+				queue.add(swapPending());
+			}
+		}
+		queue.add(poisonPill);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BatchingChannel[batchSize=%d,maxLatency=%s]", batchSize, Duration.ofNanos(maxLatencyNanos));
+	}
+}
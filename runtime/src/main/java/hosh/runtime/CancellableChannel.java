@@ -49,4 +49,9 @@ public class CancellableChannel implements OutputChannel {
 		}
 		channel.send(record);
 	}
+
+	@Override
+	public boolean isDone() {
+		return channel.isDone();
+	}
 }
@@ -35,6 +35,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,8 +47,15 @@ public class CommandCompleter implements Completer {
 
 	private final State state;
 
+	private final ExecutableIndex index;
+
 	public CommandCompleter(State state) {
+		this(state, null);
+	}
+
+	public CommandCompleter(State state, ExecutableIndex index) {
 		this.state = state;
+		this.index = index;
 	}
 
 	@Override
@@ -67,7 +75,10 @@ public class CommandCompleter implements Completer {
 
 	private void completeExternals(List<Candidate> candidates, Set<String> builtinOverrides) {
 		for (Path path : state.getPath()) {
-			if (Files.isDirectory(path)) {
+			Optional<Set<String>> indexed = index == null ? Optional.empty() : index.executables(path);
+			if (indexed.isPresent()) {
+				indexed.get().forEach(name -> candidates.add(toCandidate(path.resolve(name), builtinOverrides)));
+			} else if (Files.isDirectory(path)) {
 				executableInPath(path, candidates, builtinOverrides);
 			}
 		}
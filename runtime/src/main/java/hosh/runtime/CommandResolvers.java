@@ -33,6 +33,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 
@@ -46,12 +47,20 @@ public class CommandResolvers {
 	}
 
 	public static CommandResolver builtinsThenExternal(State state) {
+		return builtinsThenExternal(state, null);
+	}
+
+	/**
+	 * Like {@link #builtinsThenExternal(State)}, looking up PATH directories in
+	 * the given index (if not null) instead of probing the file system.
+	 */
+	public static CommandResolver builtinsThenExternal(State state, ExecutableIndex index) {
 		boolean isWindows = System.getProperty("os.name").startsWith("Windows");
 		List<CommandResolver> order = new ArrayList<>();
 		order.add(new BuiltinCommandResolver(state));
-		order.add(new ExternalCommandResolver(state));
+		order.add(new ExternalCommandResolver(state, index));
 		if (isWindows) {
-			order.add(new WindowsCommandResolver(state));
+			order.add(new WindowsCommandResolver(state, index));
 		}
 		return new AggregateCommandResolver(order);
 	}
@@ -76,15 +85,28 @@ public class CommandResolvers {
 		}
 	}
 
+	/**
+	 * Looks up executables in PATH and then in the current working directory.
+	 * <p>
+	 * When an {@link ExecutableIndex} is given, PATH directories already indexed
+	 * are looked up in memory: every keystroke in the REPL may resolve commands
+	 * and probing each PATH directory can be very slow on network file systems.
+	 */
 	public static class ExternalCommandResolver implements CommandResolver {
 
 		private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
 
 		private final State state;
 
+		private final ExecutableIndex index;
 
 		public ExternalCommandResolver(State state) {
+			this(state, null);
+		}
+
+		public ExternalCommandResolver(State state, ExecutableIndex index) {
 			this.state = state;
+			this.index = index;
 		}
 
 		@Override
@@ -94,17 +116,35 @@ public class CommandResolvers {
 			if (absoluteCandidate.isAbsolute()) {
 				return attemptResolution(absoluteCandidate);
 			}
-			List<Path> paths = new ArrayList<>(state.getPath());
-			paths.add(state.getCwd());
-			for (Path dir : paths) {
+			Path cwd = state.getCwd();
+			for (Path dir : state.getPath()) {
 				Path candidate = Paths.get(dir.toString(), commandName).normalize();
+				Optional<Set<String>> indexed = lookupIndex(dir, commandName);
+				if (indexed.isPresent()) {
+					if (indexed.get().contains(commandName)) {
+						LOGGER.info(() -> String.format("  found in index %s", candidate));
+						return Optional.of(new ExternalCommand(candidate));
+					}
+					continue;
+				}
 				Optional<Command> command = attemptResolution(candidate);
 				if (command.isPresent()) {
 					return command;
 				}
 			}
-			LOGGER.info("  not found");
-			return Optional.empty();
+			Optional<Command> command = attemptResolution(Paths.get(cwd.toString(), commandName).normalize());
+			if (command.isEmpty()) {
+				LOGGER.info("  not found");
+			}
+			return command;
+		}
+
+		// only plain names can be found in the index, which has no subdirectories
+		private Optional<Set<String>> lookupIndex(Path dir, String commandName) {
+			if (index == null || commandName.contains("/") || commandName.contains("\\")) {
+				return Optional.empty();
+			}
+			return index.executables(dir);
 		}
 
 		private Optional<Command> attemptResolution(Path candidate) {
@@ -156,8 +196,12 @@ public class CommandResolvers {
 		private final ExternalCommandResolver resolver;
 
 		public WindowsCommandResolver(State state) {
+			this(state, null);
+		}
+
+		public WindowsCommandResolver(State state, ExecutableIndex index) {
 			this.state = state;
-			resolver = new ExternalCommandResolver(state);
+			resolver = new ExternalCommandResolver(state, index);
 		}
 
 		@Override
@@ -58,6 +58,8 @@ public class Compiler {
 		this.commandResolver = commandResolver;
 	}
 
+	// commands are resolved again on every call: they carry per-execution state
+	// (e.g. pipeline position of external commands) so they cannot be shared
 	public Program compile(String input) {
 		Parser parser = new Parser();
 		ProgramContext programContext = parser.parse(input);
@@ -143,11 +145,12 @@ public class Compiler {
 		Command command = resolvedCommand
 			                  .orElseThrow(() -> new CompileError(String.format("line %d: '%s' unknown command wrapper", token.getLine(), commandName)));
 
-		if (ctx.stmt() == null) {
+		if (ctx.stmt() == null && ctx.lambda() == null) {
 			int line = ctx.start.getLine();
 			throw new CompileError(String.format("line %d: '%s' with empty wrapping statement", line, commandName));
 		}
-		Statement nestedStatement = compileStatement(ctx.stmt());
+		// e.g. 'parallel 4 { path -> cmd ${path} }'
+		Statement nestedStatement = ctx.lambda() != null ? compileLambda(ctx.lambda()) : compileStatement(ctx.stmt());
 		List<Resolvable> arguments = compileArguments(ctx.invocation());
 		if (command instanceof CommandWrapper) {
 			CommandWrapper commandWrapper = (CommandWrapper) command;
@@ -213,7 +216,7 @@ public class Compiler {
 				throw new InternalBug(ctx);
 			}
 		}
-		return new Composite(result);
+		return fold(result);
 	}
 
 	private Resolvable compileSingleQuotedString(SqstringContext ctx) {
@@ -221,7 +224,38 @@ public class Compiler {
 		for (var text : ctx.SQUOTE_TEXT()) {
 			result.add(new Constant(text.getText()));
 		}
-		return new Composite(result);
+		return fold(result);
+	}
+
+	// adjacent constants are concatenated once here instead of at every evaluation:
+	// a string without variables (e.g. "a b" or '') becomes a single constant
+	private Resolvable fold(List<Resolvable> parts) {
+		List<Resolvable> folded = new ArrayList<>(parts.size());
+		StringBuilder constant = null;
+		for (Resolvable part : parts) {
+			if (part instanceof Constant) {
+				if (constant == null) {
+					constant = new StringBuilder();
+				}
+				constant.append(((Constant) part).getValue());
+			} else {
+				if (constant != null) {
+					folded.add(new Constant(constant.toString()));
+					constant = null;
+				}
+				folded.add(part);
+			}
+		}
+		if (constant != null) {
+			folded.add(new Constant(constant.toString()));
+		}
+		if (folded.isEmpty()) {
+			return new Constant("");
+		}
+		if (folded.size() == 1) {
+			return folded.get(0);
+		}
+		return new Composite(folded);
 	}
 
 	private Resolvable compileExpansion(ExpansionContext ctx) {
@@ -265,10 +299,25 @@ public class Compiler {
 
 		private final String location;
 
+		// present when all arguments are constants
+		private final Optional<List<String>> constantArguments;
+
 		public Statement(Command command, List<Resolvable> arguments, String location) {
 			this.command = command;
 			this.arguments = arguments;
 			this.location = location;
+			this.constantArguments = resolveConstants(arguments);
+		}
+
+		private static Optional<List<String>> resolveConstants(List<Resolvable> arguments) {
+			List<String> result = new ArrayList<>(arguments.size());
+			for (Resolvable argument : arguments) {
+				if (!(argument instanceof Constant)) {
+					return Optional.empty();
+				}
+				result.add(((Constant) argument).getValue());
+			}
+			return Optional.of(List.copyOf(result));
 		}
 
 		public Command getCommand() {
@@ -279,6 +328,14 @@ public class Compiler {
 			return arguments;
 		}
 
+		/**
+		 * Arguments resolved once at compile time, allowing to skip resolution
+		 * for each evaluation of this statement (e.g. once per record in a lambda).
+		 */
+		public Optional<List<String>> getConstantArguments() {
+			return constantArguments;
+		}
+
 		/**
 		 * Describe command in a human readable form: the main purpose is to automatically adding the location of an error.
 		 * <p>
@@ -301,13 +358,23 @@ public class Compiler {
 
 		private final List<Resolvable> resolvables;
 
+		// sized for the constant parts plus some room for variables
+		private final int capacity;
+
 		public Composite(List<Resolvable> resolvables) {
 			this.resolvables = resolvables;
+			int constants = 0;
+			for (Resolvable resolvable : resolvables) {
+				if (resolvable instanceof Constant) {
+					constants += ((Constant) resolvable).getValue().length();
+				}
+			}
+			this.capacity = constants + 16 * resolvables.size();
 		}
 
 		@Override
 		public String resolve(State state) {
-			StringBuilder result = new StringBuilder();
+			StringBuilder result = new StringBuilder(capacity);
 			for (Resolvable resolvable : resolvables) {
 				result.append(resolvable.resolve(state));
 			}
@@ -327,6 +394,10 @@ public class Compiler {
 		public String resolve(State state) {
 			return value;
 		}
+
+		public String getValue() {
+			return value;
+		}
 	}
 
 	public static class Variable implements Resolvable {
@@ -26,8 +26,10 @@ package hosh.runtime;
 import hosh.runtime.Compiler.Statement;
 import hosh.spi.Command;
 import hosh.spi.CommandWrapper;
+import hosh.spi.CommandWrapper.NestedCommand;
 import hosh.spi.ExitStatus;
 import hosh.spi.InputChannel;
+import hosh.spi.Key;
 import hosh.spi.OutputChannel;
 
 import java.util.List;
@@ -54,7 +56,29 @@ class DefaultCommandDecorator implements Command, InterpreterAware {
     @Override
     public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
         // CommandNested is just a way to hide Interpreter and other internals to the modules
-        commandWrapper.setNestedCommand(() -> interpreter.eval(nested, in, out, err));
+        commandWrapper.setNestedCommand(new NestedCommand() {
+
+            @Override
+            public ExitStatus run() {
+                return interpreter.eval(nested, in, out, err);
+            }
+
+            @Override
+            public ExitStatus runWithStats(OutputChannel stats) {
+                return StageStats.collecting(stats, this::run);
+            }
+
+            @Override
+            public ExitStatus runParallel(int copies, boolean ordered) {
+                Lanes lanes = new Lanes(interpreter, nested, copies);
+                return ordered ? lanes.runOrdered(in, out, err) : lanes.runUnordered(in, out, err);
+            }
+
+            @Override
+            public ExitStatus runPartitioned(Key key, int partitions) {
+                return new Lanes(interpreter, nested, partitions).runPartitioned(key, in, out, err);
+            }
+        });
         return commandWrapper.run(args, in, out, err);
     }
 
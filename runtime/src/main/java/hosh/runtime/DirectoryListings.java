@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Recently listed directories, keyed by directory and last modified time.
+ * <p>
+ * Listing happens in background: callers wait at most for the given time
+ * and get what has been listed so far, asking again returns more entries.
+ * Once complete, a listing is served from memory, while its last modified
+ * time is checked in background: if the directory changed, the next call
+ * gets a new listing. No I/O is performed by the calling thread.
+ */
+class DirectoryListings {
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	private static final int MAX_DIRECTORIES = 16;
+
+	private final Executor executor;
+
+	private final Map<Path, Listing> listings = new LinkedHashMap<>(MAX_DIRECTORIES, 0.75f, true);
+
+	public DirectoryListings(Executor executor) {
+		this.executor = executor;
+	}
+
+	public List<Entry> list(Path dir, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+		Listing listing;
+		boolean fresh = false;
+		synchronized (this) {
+			listing = listings.get(dir);
+			if (listing == null || listing.isFailed()) {
+				listing = replace(dir);
+				fresh = true;
+			}
+		}
+		if (fresh && !listLater(listing)) {
+			return List.of();
+		} else if (listing.isDone()) {
+			revalidateLater(listing);
+		}
+		return listing.await(unit.toNanos(timeout));
+	}
+
+	// guarded by this
+	private Listing replace(Path dir) {
+		Listing listing = new Listing(dir);
+		listings.put(dir, listing);
+		if (listings.size() > MAX_DIRECTORIES) {
+			Path eldest = listings.keySet().iterator().next();
+			listings.remove(eldest);
+		}
+		return listing;
+	}
+
+	// a listing never started must not be awaited by later completions
+	private boolean listLater(Listing listing) {
+		try {
+			executor.execute(listing::run);
+			return true;
+		} catch (RejectedExecutionException e) {
+			LOGGER.log(Level.FINE, "cannot list directory in background", e);
+			synchronized (this) {
+				listings.remove(listing.dir, listing);
+			}
+			return false;
+		}
+	}
+
+	private void revalidateLater(Listing listing) {
+		if (!listing.revalidating.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(() -> revalidate(listing));
+		} catch (RejectedExecutionException e) {
+			LOGGER.log(Level.FINE, "cannot check directory in background", e);
+			listing.revalidating.set(false);
+		}
+	}
+
+	private void revalidate(Listing listing) {
+		try {
+			if (!listing.isChanged()) {
+				return;
+			}
+			Listing fresh;
+			synchronized (this) {
+				if (listings.get(listing.dir) != listing) {
+					return; // already replaced or evicted
+				}
+				fresh = replace(listing.dir);
+			}
+			fresh.run();
+		} finally {
+			listing.revalidating.set(false);
+		}
+	}
+
+	public static class Entry {
+
+		private final Path path;
+
+		private final boolean directory;
+
+		public Entry(Path path, boolean directory) {
+			this.path = path;
+			this.directory = directory;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+	}
+
+	private static class Listing {
+
+		private final Path dir;
+
+		private final AtomicBoolean revalidating = new AtomicBoolean(false);
+
+		// read before listing, so that changes made in the meantime are not lost
+		private volatile FileTime lastModified;
+
+		private final List<Entry> entries = new ArrayList<>();
+
+		private boolean done = false;
+
+		private IOException error;
+
+		public Listing(Path dir) {
+			this.dir = dir;
+		}
+
+		public void run() {
+			try {
+				lastModified = Files.getLastModifiedTime(dir);
+			} catch (IOException e) {
+				finish(e);
+				return;
+			}
+			try (Stream<Path> list = Files.list(dir)) {
+				list.forEach(path -> add(new Entry(path, Files.isDirectory(path))));
+				finish(null);
+			} catch (IOException e) {
+				finish(e);
+			} catch (UncheckedIOException e) {
+				finish(e.getCause());
+			}
+		}
+
+		public synchronized List<Entry> await(long timeoutNanos) throws IOException, InterruptedException {
+			long deadline = System.nanoTime() + timeoutNanos;
+			while (!done) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			if (error != null) {
+				throw error;
+			}
+			return List.copyOf(entries);
+		}
+
+		public synchronized boolean isFailed() {
+			return error != null;
+		}
+
+		public synchronized boolean isDone() {
+			return done;
+		}
+
+		// a directory that cannot be checked anymore (i.e. deleted) is listed again, reporting the error
+		public boolean isChanged() {
+			try {
+				return !Files.getLastModifiedTime(dir).equals(lastModified);
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, e, () -> String.format("cannot check %s", dir));
+				return true;
+			}
+		}
+
+		private synchronized void add(Entry entry) {
+			entries.add(entry);
+		}
+
+		private synchronized void finish(IOException e) {
+			done = true;
+			error = e;
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of hosh (see HOSH_JFR).
+ * <p>
+ * When no recording is running begin() and commit() do nothing,
+ * so events are created even in hot paths; fields are filled only if
+ * shouldCommit() says that the event is going to be recorded.
+ */
+final class Events {
+
+	private static final String CATEGORY = "Hosh";
+
+	private Events() {
+	}
+
+	@Name("hosh.Statement")
+	@Label("Statement")
+	@Description("Evaluation of a statement")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class StatementEvent extends Event {
+
+		@Label("Command")
+		String command;
+
+		@Label("Location")
+		String location;
+
+		@Label("Exit Status")
+		int exitStatus;
+	}
+
+	@Name("hosh.Process")
+	@Label("Process")
+	@Description("External command, from spawn to exit")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ProcessEvent extends Event {
+
+		@Label("Command")
+		String command;
+
+		@Label("PID")
+		long pid;
+
+		@Label("Spawn")
+		@Description("Time spent to start the process")
+		@Timespan(Timespan.NANOSECONDS)
+		long spawn;
+
+		@Label("Exit Code")
+		int exitCode;
+	}
+
+	@Name("hosh.ChannelWait")
+	@Label("Channel Wait")
+	@Description("Pipeline stage blocked sending or receiving records")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("1 ms")
+	static class ChannelWaitEvent extends Event {
+
+		@Label("Channel")
+		String channel;
+
+		@Label("Operation")
+		String operation;
+	}
+
+	@Name("hosh.AutoTable")
+	@Label("Auto Table")
+	@Description("Records buffered to display a table")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class AutoTableEvent extends Event {
+
+		@Label("Records")
+		int records;
+
+		@Label("Overflow")
+		@Description("Too many records to be buffered: sent as they are")
+		boolean overflow;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the executables contained in PATH directories,
+ * shared by command resolution and completion.
+ * <p>
+ * A directory is listed in background the first time it is requested:
+ * until then callers are expected to look at the file system by themselves.
+ * Once listed, the directory is watched for changes; it is also listed again
+ * from time to time, since changes made by other hosts on network file systems
+ * are not always notified.
+ */
+public class ExecutableIndex implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	private static final long REINDEX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final Executor executor;
+
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Map<WatchKey, Path> watched = new ConcurrentHashMap<>();
+
+	private WatchService watchService;
+
+	private boolean closed = false;
+
+	public ExecutableIndex(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Names of the executables in dir, empty if the directory has not been indexed yet.
+	 */
+	public Optional<Set<String>> executables(Path dir) {
+		Entry entry = entries.computeIfAbsent(dir, key -> new Entry());
+		if (entry.isStale(System.nanoTime()) && entry.indexing.compareAndSet(false, true)) {
+			try {
+				executor.execute(() -> index(dir, entry));
+			} catch (RejectedExecutionException e) {
+				LOGGER.log(Level.FINE, "cannot index in background", e);
+				entry.indexing.set(false);
+			}
+		}
+		return Optional.ofNullable(entry.executables);
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "caught exception", e);
+			}
+		}
+	}
+
+	// watching before listing, so that no change is lost in between;
+	// a listing racing with an event is dropped, since it could be older than the event
+	private void index(Path dir, Entry entry) {
+		try {
+			watch(dir);
+			long generation = entry.generation;
+			Set<String> executables;
+			try (Stream<Path> list = Files.list(dir)) {
+				executables = list
+					              .filter(ExecutableIndex::isExecutable)
+					              .map(file -> file.getFileName().toString())
+					              .collect(Collectors.toUnmodifiableSet());
+			} catch (IOException | UncheckedIOException e) {
+				LOGGER.log(Level.FINE, e, () -> String.format("cannot list %s", dir));
+				executables = Set.of();
+			}
+			synchronized (entry) {
+				if (entry.generation != generation) {
+					LOGGER.fine(() -> String.format("%s changed while listing, listing it again", dir));
+					entry.indexedAt = 0;
+					return;
+				}
+				entry.executables = executables;
+				entry.indexedAt = System.nanoTime();
+			}
+		} finally {
+			// otherwise the directory would never be indexed again
+			entry.indexing.set(false);
+		}
+	}
+
+	private synchronized void watch(Path dir) {
+		if (closed || watched.containsValue(dir)) {
+			return;
+		}
+		try {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+				Thread watcher = new Thread(this::processEvents, "hosh-path-watcher");
+				watcher.setDaemon(true);
+				watcher.setUncaughtExceptionHandler((thread, e) -> LOGGER.log(Level.SEVERE, "path watcher died, relying on periodic listing", e));
+				watcher.start();
+			}
+			WatchKey key = dir.register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+			watched.put(key, dir);
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, e, () -> String.format("cannot watch %s", dir));
+		}
+	}
+
+	private void processEvents() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path dir = watched.get(key);
+				Entry entry = dir == null ? null : entries.get(dir);
+				if (entry != null) {
+					updateAll(dir, entry, key);
+				}
+				if (!key.reset()) {
+					watched.remove(key);
+					if (entry != null) {
+						entry.invalidate();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			LOGGER.fine("watch service closed");
+		}
+	}
+
+	// a single bad event (i.e. a file name that is not a valid path) must not stop the watcher
+	private void updateAll(Path dir, Entry entry, WatchKey key) {
+		try {
+			for (WatchEvent<?> event : key.pollEvents()) {
+				update(dir, entry, event);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.FINE, e, () -> String.format("cannot update %s, listing it again", dir));
+			entry.invalidate();
+		}
+	}
+
+	private void update(Path dir, Entry entry, WatchEvent<?> event) {
+		if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			entry.invalidate();
+			return;
+		}
+		String name = event.context().toString();
+		boolean executable = isExecutable(dir.resolve(name));
+		synchronized (entry) {
+			entry.generation++;
+			Set<String> executables = entry.executables;
+			if (executables == null || executable == executables.contains(name)) {
+				return;
+			}
+			Set<String> updated = new HashSet<>(executables);
+			if (executable) {
+				updated.add(name);
+			} else {
+				updated.remove(name);
+			}
+			entry.executables = Set.copyOf(updated);
+		}
+	}
+
+	private static boolean isExecutable(Path file) {
+		return Files.isRegularFile(file) && Files.isExecutable(file);
+	}
+
+	private static class Entry {
+
+		private final AtomicBoolean indexing = new AtomicBoolean(false);
+
+		// copy-on-write: readers never lock, writers synchronize on the entry
+		private volatile Set<String> executables;
+
+		private volatile long indexedAt;
+
+		// bumped by every event, guarded by the entry
+		private volatile long generation;
+
+		public synchronized void invalidate() {
+			generation++;
+			indexedAt = 0;
+		}
+
+		public boolean isStale(long now) {
+			return executables == null || indexedAt == 0 || now - indexedAt > REINDEX_NANOS;
+		}
+	}
+}
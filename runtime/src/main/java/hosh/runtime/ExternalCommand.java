@@ -27,6 +27,7 @@ import hosh.spi.Command;
 import hosh.spi.Errors;
 import hosh.spi.ExitStatus;
 import hosh.spi.InputChannel;
+import hosh.spi.Key;
 import hosh.spi.Keys;
 import hosh.spi.LoggerFactory;
 import hosh.spi.OutputChannel;
@@ -36,35 +37,58 @@ import hosh.spi.State;
 import hosh.spi.StateAware;
 import hosh.spi.Values;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 // used for any non built-in commands (e.g. native commands such as 'vim' or 'ssh')
-class ExternalCommand implements Command, StateAware {
+class ExternalCommand implements Command, InterpreterAware, StateAware {
 
 	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
 
+	// 128 + SIGPIPE, as reported by Process.exitValue()
+	private static final int SIGPIPE_EXIT_CODE = 141;
+
+	// usually a few error messages, see DefaultProcessFactory
+	private static final int STDERR_BUFFER_SIZE = 8 * 1024;
+
+	// lines of raw bytes, see sendRawBytes()
+	static final Key BYTES = Keys.of("bytes");
+
 	private final Path path;
 
 	private ProcessFactory processFactory = new DefaultProcessFactory();
 
 	private State state; // needed for current working directory
 
-	private PipelineCommand.Position position = PipelineCommand.Position.SOLE;
+	private Interpreter interpreter; // needed for the threads pumping stdin and stderr
+
+	// the same instance could run concurrently in several threads (i.e. 'parallel' lanes):
+	// settings of the next run() and processes running are kept per thread
+	private final ThreadLocal<Execution> next = ThreadLocal.withInitial(Execution::new);
+
+	// processes still running, destroyed by cancel()
+	private final Map<Thread, List<Process>> running = new ConcurrentHashMap<>();
 
 	public ExternalCommand(Path path) {
 		this.path = path;
@@ -75,26 +99,89 @@ class ExternalCommand implements Command, StateAware {
 		this.state = state;
 	}
 
+	@Override
+	public void setInterpreter(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	// all these settings apply to the next run() in the calling thread
 	public void pipeline(PipelineCommand.Position newPosition) {
-		this.position = newPosition;
+		next.get().position = newPosition;
+	}
+
+	// adjacent external commands following this one in a pipeline (see PipelineCommand):
+	// they are connected by OS pipes, so their data never passes through the JVM
+	public void pipeTo(List<List<String>> commandLines) {
+		next.get().pipedTo = commandLines;
+	}
+
+	// the output goes to another external command, maybe through transformers not looking at values
+	// (i.e. 'cat data.bin | take 100 | xxd'): lines are sent as raw bytes, without decoding them
+	public void sendRawBytes(boolean enabled) {
+		next.get().rawBytes = enabled;
+	}
+
+	// called when the next stage of the pipeline needs no more records:
+	// the process could be blocked writing to stdout;
+	// only processes started by run() in the given thread are destroyed
+	public void cancel(Thread thread) {
+		List<Process> processes = running.remove(thread);
+		if (processes == null) {
+			return;
+		}
+		for (Process process : processes) {
+			LOGGER.fine(() -> String.format("destroying %s", process));
+			process.destroy();
+		}
 	}
 
 	@Override
 	public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
-		List<String> processArgs = new ArrayList<>(args.size() + 1);
-		processArgs.add(path.toAbsolutePath().toString());
-		processArgs.addAll(args);
+		Execution execution = next.get();
+		next.remove();
+		Thread thread = Thread.currentThread();
+		List<List<String>> commandLines = new ArrayList<>(1 + execution.pipedTo.size());
+		commandLines.add(commandLine(args));
+		commandLines.addAll(execution.pipedTo);
 		Path cwd = state.getCwd();
-		LOGGER.fine(() -> String.format("executing '%s' in directory %s", processArgs, cwd));
+		// iterated as is by ProcessBuilder, even if 'set' runs concurrently in another stage
+		Map<String, String> env = state.getVariablesSnapshot();
+		LOGGER.fine(() -> String.format("executing '%s' in directory %s", commandLines, cwd));
 		LOGGER.fine(() -> String.format("in '%s', out '%s', err '%s'", in, out, err));
-		Process process = null;
+		List<Process> processes = List.of();
+		List<Events.ProcessEvent> events = new ArrayList<>(commandLines.size());
+		for (int i = 0; i < commandLines.size(); i++) {
+			Events.ProcessEvent event = new Events.ProcessEvent();
+			event.begin();
+			events.add(event);
+		}
+		long spawnStart = System.nanoTime();
+		List<Future<?>> pumps = new ArrayList<>();
 		try {
-			process = processFactory.create(processArgs, cwd, state.getVariables(), position);
-			writeStdin(in, process);
-			readStdout(out, process);
-			readStderr(err, process);
-			int exitCode = process.waitFor();
+			processes = start(commandLines, cwd, env, execution.position);
+			long spawn = System.nanoTime() - spawnStart;
+			events.forEach(event -> event.spawn = spawn);
+			running.put(thread, processes);
+			if (thread.isInterrupted()) {
+				// cancelled before the processes were running, see PipelineCommand.Stage
+				cancel(thread);
+			}
+			Process first = processes.get(0);
+			Process last = processes.get(processes.size() - 1);
+			// stdin and stderr are pumped by other threads: the process could block
+			// writing to stdout while we are still writing to its stdin (i.e. 'rand | take 100000 | cat')
+			pumps.add(pump(writeStdin(in, first)));
+			for (Process process : processes) {
+				pumps.add(pump(readStderr(err, process)));
+			}
+			readStdout(out, last, execution.rawBytes);
+			int exitCode = waitFor(processes, events);
+			waitForPumps(pumps);
 			LOGGER.fine(() -> String.format("exited with %s", exitCode));
+			if (!running.remove(thread, processes)) {
+				LOGGER.fine("destroyed by cancel()");
+				return ExitStatus.success();
+			}
 			return ExitStatus.of(exitCode);
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, "caught exception", e);
@@ -105,70 +192,251 @@ class ExternalCommand implements Command, StateAware {
 			err.send(Records.singleton(Keys.ERROR, Values.ofText("interrupted")));
 			return ExitStatus.error();
 		} finally {
-			if (process != null) {
+			pumps.forEach(pump -> pump.cancel(true));
+			running.remove(thread, processes);
+			for (int i = 0; i < processes.size(); i++) {
+				Process process = processes.get(i);
 				process.destroy();
+				commit(events.get(i), commandLines.get(i).get(0), process);
 			}
 		}
 	}
 
-	private void writeStdin(InputChannel in, Process process) {
-		pipeChannelToOutputStream(in, process.getOutputStream());
+	// absolute path of the executable followed by the arguments
+	public List<String> commandLine(List<String> args) {
+		List<String> result = new ArrayList<>(args.size() + 1);
+		result.add(path.toAbsolutePath().toString());
+		result.addAll(args);
+		return result;
 	}
 
-	private void pipeChannelToOutputStream(InputChannel in, OutputStream outputStream) {
+	private List<Process> start(List<List<String>> commandLines, Path cwd, Map<String, String> env, PipelineCommand.Position position) throws IOException {
+		if (commandLines.size() == 1) {
+			return List.of(processFactory.create(commandLines.get(0), cwd, env, position));
+		}
+		return processFactory.createPipeline(commandLines, cwd, env, position);
+	}
+
+	// exit code of the first process that failed, like any other pipeline;
+	// the last process decides when the pipeline ends: a process before it could
+	// still be writing to a pipe nobody reads anymore (i.e. 'yes | head -n 1') and
+	// it never gets SIGPIPE since the JVM keeps the read end of the intermediate pipes open
+	private int waitFor(List<Process> processes, List<Events.ProcessEvent> events) throws InterruptedException {
+		int lastIndex = processes.size() - 1;
+		int lastExitCode = processes.get(lastIndex).waitFor();
+		events.get(lastIndex).exitCode = lastExitCode;
+		int result = 0;
+		for (int i = 0; i < lastIndex; i++) {
+			Process process = processes.get(i);
+			boolean orphan = process.isAlive();
+			if (orphan) {
+				process.destroy();
+			}
+			int exitCode = process.waitFor();
+			events.get(i).exitCode = exitCode;
+			if (result == 0 && !orphan && exitCode != SIGPIPE_EXIT_CODE) {
+				result = exitCode;
+			}
+		}
+		return result == 0 ? lastExitCode : result;
+	}
+
+	private void commit(Events.ProcessEvent event, String command, Process process) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.command = command;
+			event.pid = process.pid();
+			event.commit();
+		}
+	}
+
+	private Future<?> pump(Callable<Void> task) {
+		return interpreter.getExecutor().submit(task);
+	}
+
+	private void waitForPumps(List<Future<?>> pumps) throws InterruptedException, IOException {
+		for (Future<?> pump : pumps) {
+			try {
+				pump.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new RuntimeException("caught exception", cause);
+			}
+		}
+	}
+
+	// the stats of the stage are looked up by the calling thread, then updated only
+	// by the pump (bytes and records in, time blocked receiving): they are published
+	// to the calling thread by joining the pump in waitForPumps()
+	private Callable<Void> writeStdin(InputChannel in, Process process) {
+		OutputStream stdin = process.getOutputStream();
+		Optional<StageStats> stats = StageStats.current();
+		OutputStream outputStream = stats.isPresent() ? stats.get().meter(stdin) : stdin;
+		return () -> {
+			pipeChannelToOutputStream(in, outputStream, process);
+			return null;
+		};
+	}
+
+	// stop reading from the previous stage as soon as the process exits (i.e. 'head'),
+	// otherwise the whole pipeline would never end with an infinite producer
+	// raw bytes coming from another external command are written as they are
+	private void pipeChannelToOutputStream(InputChannel in, OutputStream outputStream, Process process) {
 		Locale locale = Locale.getDefault();
-		try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+		BufferedOutputStream bytes = new BufferedOutputStream(outputStream);
+		WritableByteChannel rawChannel = Channels.newChannel(bytes);
+		try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+			boolean pendingText = false;
 			for (Record record : InputChannel.iterate(in)) {
-				record.print(pw, locale);
-				pw.println();
+				if (!process.isAlive()) {
+					LOGGER.fine("process exited, no more input needed");
+					break;
+				}
+				Optional<ByteBuffer> raw = rawBytes(record);
+				if (raw.isPresent()) {
+					if (pendingText) {
+						pw.flush();
+						pendingText = false;
+					}
+					rawChannel.write(raw.get());
+				} else {
+					record.print(pw, locale);
+					pw.println();
+					pendingText = true;
+				}
 			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "process closed its input", e);
 		}
 	}
 
-	private void readStdout(OutputChannel out, Process process) throws IOException {
-		pipeInputStreamToChannel(out, process.getInputStream());
+	private Optional<ByteBuffer> rawBytes(Record record) {
+		if (record.size() != 1) {
+			return Optional.empty();
+		}
+		return record.value(BYTES).flatMap(value -> value.unwrap(ByteBuffer.class));
 	}
 
-	private void readStderr(OutputChannel err, Process process) throws IOException {
-		pipeInputStreamToChannel(err, process.getErrorStream());
+	private void readStdout(OutputChannel out, Process process, boolean rawBytes) throws IOException {
+		InputStream stdout = process.getInputStream();
+		Optional<StageStats> stats = StageStats.current();
+		InputStream inputStream = stats.isPresent() ? stats.get().meter(stdout) : stdout;
+		if (rawBytes) {
+			pipeRawBytesToChannel(out, new LineSplitter(inputStream));
+		} else {
+			pipeInputStreamToChannel(out, new LineDecoder(inputStream));
+		}
+	}
+
+	// stderr of a process writing to the terminal is inherited: an empty stream here
+	private Callable<Void> readStderr(OutputChannel err, Process process) {
+		InputStream stderr = process.getErrorStream();
+		return () -> {
+			pipeInputStreamToChannel(err, new LineDecoder(stderr, STDERR_BUFFER_SIZE));
+			return null;
+		};
 	}
 
-	private void pipeInputStreamToChannel(OutputChannel channel, InputStream inputStream) throws IOException {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+	private void pipeInputStreamToChannel(OutputChannel channel, LineDecoder decoder) throws IOException {
+		try (decoder) {
 			while (true) {
-				String readLine = reader.readLine();
-				if (readLine == null) {
+				List<String> lines = decoder.readLines();
+				if (lines.isEmpty()) {
 					break;
 				}
-				channel.send(Records.singleton(Keys.TEXT, Values.ofText(readLine)));
+				for (String line : lines) {
+					channel.send(Records.singleton(Keys.TEXT, Values.ofText(line)));
+				}
 			}
 		}
 	}
 
+	private void pipeRawBytesToChannel(OutputChannel channel, LineSplitter splitter) throws IOException {
+		try (splitter) {
+			while (true) {
+				List<byte[]> lines = splitter.readLines();
+				if (lines.isEmpty()) {
+					break;
+				}
+				for (byte[] line : lines) {
+					channel.send(Records.singleton(BYTES, Values.ofBytes(line)));
+				}
+			}
+		}
+	}
+
+	// settings of a single run(), see pipeline(), pipeTo() and sendRawBytes()
+	private static class Execution {
+
+		private PipelineCommand.Position position = PipelineCommand.Position.SOLE;
+
+		private List<List<String>> pipedTo = List.of();
+
+		private boolean rawBytes = false;
+	}
+
 	// testing aid since we cannot mock ProcessBuilder
 	interface ProcessFactory {
 
 		Process create(List<String> args, Path cwd, Map<String, String> env, PipelineCommand.Position position) throws IOException;
+
+		List<Process> createPipeline(List<List<String>> commandLines, Path cwd, Map<String, String> env, PipelineCommand.Position position) throws IOException;
 	}
 
 	private static class DefaultProcessFactory implements ProcessFactory {
 
 		@Override
 		public Process create(List<String> args, Path cwd, Map<String, String> env, PipelineCommand.Position position) throws IOException {
-			ProcessBuilder processBuilder = new ProcessBuilder(args).directory(cwd.toFile());
-			processBuilder.environment().clear();
-			processBuilder.environment().putAll(env);
-			processBuilder.inheritIO();
+			ProcessBuilder processBuilder = newProcessBuilder(args, cwd, env);
 			if (position.redirectInput()) {
 				LOGGER.fine("setting PIPE for input");
 				processBuilder.redirectInput(Redirect.PIPE);
 			}
 			if (position.redirectOutput()) {
-				LOGGER.fine("setting PIPE for output");
+				LOGGER.fine("setting PIPE for output and error");
 				processBuilder.redirectOutput(Redirect.PIPE);
+				processBuilder.redirectError(Redirect.PIPE);
 			}
 			return processBuilder.start();
 		}
+
+		// processes in between are connected by OS pipes, see ProcessBuilder.startPipeline()
+		@Override
+		public List<Process> createPipeline(List<List<String>> commandLines, Path cwd, Map<String, String> env, PipelineCommand.Position position) throws IOException {
+			List<ProcessBuilder> processBuilders = new ArrayList<>(commandLines.size());
+			for (List<String> commandLine : commandLines) {
+				ProcessBuilder processBuilder = newProcessBuilder(commandLine, cwd, env);
+				processBuilder.redirectInput(Redirect.PIPE);
+				processBuilder.redirectOutput(Redirect.PIPE);
+				processBuilder.redirectError(Redirect.PIPE);
+				processBuilders.add(processBuilder);
+			}
+			if (!position.redirectInput()) {
+				processBuilders.get(0).redirectInput(Redirect.INHERIT);
+			}
+			if (!position.redirectOutput()) {
+				ProcessBuilder last = processBuilders.get(processBuilders.size() - 1);
+				last.redirectOutput(Redirect.INHERIT);
+				last.redirectError(Redirect.INHERIT);
+			}
+			return ProcessBuilder.startPipeline(processBuilders);
+		}
+
+		// stderr is inherited as long as stdout is inherited too (i.e. 'vim' or 'git push' writing
+		// to the terminal), otherwise it is pumped to the error channel, see readStderr()
+		private ProcessBuilder newProcessBuilder(List<String> args, Path cwd, Map<String, String> env) {
+			ProcessBuilder processBuilder = new ProcessBuilder(args).directory(cwd.toFile());
+			processBuilder.environment().clear();
+			processBuilder.environment().putAll(env);
+			processBuilder.inheritIO();
+			return processBuilder;
+		}
 	}
 
 	public void setProcessFactory(ProcessFactory processFactory) {
@@ -23,6 +23,7 @@
  */
 package hosh.runtime;
 
+import hosh.spi.LoggerFactory;
 import hosh.spi.State;
 import org.jline.reader.Candidate;
 import org.jline.reader.Completer;
@@ -32,19 +33,29 @@ import org.jline.reader.ParsedLine;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.UnaryOperator;
-import java.util.stream.Stream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class FileSystemCompleter implements Completer {
 
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	// completion should never freeze the line reader, even on huge or slow directories
+	private static final long TIME_BUDGET_MILLIS = 200;
+
 	private final State state;
 
-	public FileSystemCompleter(State state) {
+	private final DirectoryListings listings;
+
+	public FileSystemCompleter(State state, Executor executor) {
 		this.state = state;
+		this.listings = new DirectoryListings(executor);
 	}
 
 	@Override
@@ -70,24 +81,20 @@ public class FileSystemCompleter implements Completer {
 	}
 
 	private void listCandidates(Path dir, UnaryOperator<Path> toPath, List<Candidate> candidates) {
-		try (Stream<Path> list = Files.list(dir)) {
-			list
-				.map(toPath)
-				.map(this::toCandidate)
-				.forEach(candidates::add);
+		try {
+			for (DirectoryListings.Entry entry : listings.list(dir, TIME_BUDGET_MILLIS, TimeUnit.MILLISECONDS)) {
+				candidates.add(toCandidate(toPath.apply(entry.getPath()), entry.isDirectory()));
+			}
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			LOGGER.log(Level.FINE, "interrupted while listing", e);
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	private Candidate toCandidate(Path path) {
-		Path resolved;
-		if (path.isAbsolute()) {
-			resolved = path;
-		} else {
-			resolved = state.getCwd().resolve(path);
-		}
-		if (Files.isDirectory(resolved)) {
+	private Candidate toCandidate(Path path, boolean directory) {
+		if (directory) {
 			return Candidates.incomplete(path.toString() + File.separator);
 		} else {
 			return Candidates.complete(path.toString());
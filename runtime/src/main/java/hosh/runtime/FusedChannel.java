@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Transformer.Transformation;
+
+/**
+ * Applies a transformation in the thread of the sender, before handing
+ * records to the next channel.
+ * <p>
+ * When the transformation needs no more records the sender is stopped,
+ * exactly as a consumer would do via {@link PipelineChannel}.
+ * <p>
+ * Once the sender is done {@link #end()} must be called to flush aggregated
+ * results (i.e. 'count') down the chain.
+ */
+class FusedChannel implements OutputChannel {
+
+	private final Transformation transformation;
+
+	private final OutputChannel next;
+
+	private boolean done = false;
+
+	private boolean ended = false;
+
+	public FusedChannel(Transformation transformation, OutputChannel next) {
+		this.transformation = transformation;
+		this.next = next;
+	}
+
+	@Override
+	public void send(Record record) {
+		if (done || !transformation.apply(record, next)) {
+			done = true;
+			throw new ProducerPoisonPill();
+		}
+	}
+
+	@Override
+	public boolean isDone() {
+		return done || next.isDone();
+	}
+
+	public void end() {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		try {
+			transformation.end(next);
+		} catch (ProducerPoisonPill e) {
+			// next stage needs no more records
+		}
+		if (next instanceof FusedChannel) {
+			((FusedChannel) next).end();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FusedChannel[transformation=%s,next=%s]", transformation, next);
+	}
+}
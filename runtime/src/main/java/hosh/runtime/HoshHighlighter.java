@@ -23,36 +23,100 @@
  */
 package hosh.runtime;
 
+import hosh.runtime.antlr4.HoshLexer;
+import hosh.runtime.antlr4.HoshParser;
+import hosh.spi.Command;
+import hosh.spi.CommandWrapper;
 import hosh.spi.LoggerFactory;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.jline.reader.Highlighter;
 import org.jline.reader.LineReader;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStringBuilder;
 import org.jline.utils.AttributedStyle;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
+/**
+ * Colours commands, variables and strings of the REPL buffer.
+ * <p>
+ * Highlighting runs on every keystroke, so it never performs I/O: the buffer
+ * is lexed again only from the token being edited onward and checked by the
+ * parser, while commands are resolved in background. Until the resolution of
+ * a command is known, it is shown with the default style; the line is then
+ * redisplayed as soon as the result arrives.
+ */
 public class HoshHighlighter implements Highlighter {
 
 	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
-	private final Compiler compiler;
 
-	public HoshHighlighter(Compiler compiler) {
-		this.compiler = compiler;
+	private static final AttributedStyle COMMAND = AttributedStyle.BOLD;
+
+	private static final AttributedStyle VARIABLE = AttributedStyle.DEFAULT.foreground(AttributedStyle.CYAN);
+
+	private static final AttributedStyle STRING = AttributedStyle.DEFAULT.foreground(AttributedStyle.GREEN);
+
+	private static final AttributedStyle ERROR = AttributedStyle.BOLD.foreground(AttributedStyle.RED);
+
+	// resolutions are revalidated after a while, keeping the last known one meanwhile
+	private static final long RESOLUTION_TTL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	private static final int MAX_RESOLUTIONS = 1024;
+
+	private final CommandResolver commandResolver;
+
+	private final Executor executor;
+
+	private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger resolved = new AtomicInteger();
+
+	private Lexed lexed = new Lexed("", List.of());
+
+	private AttributedString highlighted;
+
+	private int highlightedWith = -1;
+
+	public HoshHighlighter(CommandResolver commandResolver, Executor executor) {
+		this.commandResolver = commandResolver;
+		this.executor = executor;
 	}
 
 	@Override
 	public AttributedString highlight(LineReader reader, String buffer) {
-		AttributedStringBuilder sb = new AttributedStringBuilder();
-		try {
-			compiler.compile(buffer);
-			return sb.append(buffer).toAttributedString();
-		} catch (RuntimeException e) {
-			LOGGER.log(Level.FINER, "caught exception", e);
-			return sb.append(buffer, AttributedStyle.BOLD.foreground(AttributedStyle.RED)).toAttributedString();
+		int version = resolved.get();
+		if (buffer.equals(lexed.buffer) && version == highlightedWith) {
+			return highlighted;
 		}
+		lexed = lexed.relex(buffer);
+		highlighted = paint(reader, lexed);
+		highlightedWith = version;
+		return highlighted;
 	}
 
 	@Override
@@ -64,4 +128,324 @@ public class HoshHighlighter implements Highlighter {
 	public void setErrorIndex(int errorIndex) {
 		throw new UnsupportedOperationException();
 	}
+
+	private AttributedString paint(LineReader reader, Lexed current) {
+		List<Lexeme> lexemes = current.lexemes;
+		AttributedStyle[] styles = new AttributedStyle[lexemes.size()];
+		int previous = -1;
+		for (int i = 0; i < lexemes.size(); i++) {
+			Lexeme lexeme = lexemes.get(i);
+			if (lexeme.token == null) {
+				styles[i] = ERROR;
+				continue;
+			}
+			int type = lexeme.token.getType();
+			int next = i + 1 < lexemes.size() && lexemes.get(i + 1).token != null ? lexemes.get(i + 1).token.getType() : Token.EOF;
+			styles[i] = style(reader, current, i, previous, next);
+			previous = type;
+		}
+		int error = current.parseError();
+		if (error >= 0) {
+			for (int i = error; i < lexemes.size(); i++) {
+				styles[i] = ERROR;
+			}
+		}
+		AttributedStringBuilder sb = new AttributedStringBuilder();
+		int position = 0;
+		for (int i = 0; i < lexemes.size(); i++) {
+			Lexeme lexeme = lexemes.get(i);
+			if (lexeme.start < position) {
+				continue;
+			}
+			sb.append(current.buffer.substring(position, lexeme.start));
+			sb.append(current.buffer.substring(lexeme.start, lexeme.end), styles[i]);
+			position = lexeme.end;
+		}
+		sb.append(current.buffer.substring(position));
+		return sb.toAttributedString();
+	}
+
+	private AttributedStyle style(LineReader reader, Lexed current, int index, int previous, int next) {
+		Lexeme lexeme = current.lexemes.get(index);
+		switch (lexeme.token.getType()) {
+			case HoshLexer.ID:
+				if (previous == HoshLexer.OPEN_CURLY && next == HoshLexer.ARROW) { // lambda parameter
+					return VARIABLE;
+				}
+				if (isCommandPosition(previous)) {
+					return commandStyle(reader, current.buffer.substring(lexeme.start, lexeme.end), () -> isFollowedByBlock(current.lexemes, index));
+				}
+				return AttributedStyle.DEFAULT;
+			case HoshLexer.PIPE:
+				return next == Token.EOF ? ERROR : AttributedStyle.DEFAULT; // incomplete pipeline
+			case HoshLexer.VARIABLE:
+			case HoshLexer.VARIABLE_OR_FALLBACK:
+			case HoshLexer.DQUOTE_VARIABLE:
+			case HoshLexer.DQUOTE_VARIABLE_OR_FALLBACK:
+				return VARIABLE;
+			case HoshLexer.OPEN_SQUOTE:
+			case HoshLexer.SQUOTE_TEXT:
+			case HoshLexer.CLOSE_SQUOTE:
+			case HoshLexer.OPEN_DQUOTE:
+			case HoshLexer.DQUOTE_TEXT:
+			case HoshLexer.CLOSE_DQUOTE:
+				return STRING;
+			default:
+				return AttributedStyle.DEFAULT;
+		}
+	}
+
+	private boolean isCommandPosition(int previous) {
+		switch (previous) {
+			case -1:
+			case HoshLexer.PIPE:
+			case HoshLexer.SEMICOLON:
+			case HoshLexer.NEWLINE:
+			case HoshLexer.OPEN_CURLY:
+			case HoshLexer.ARROW:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	// i.e. 'withTime { ... }' or 'parallel 4 { ... }'
+	private boolean isFollowedByBlock(List<Lexeme> lexemes, int index) {
+		for (int i = index + 1; i < lexemes.size(); i++) {
+			Token token = lexemes.get(i).token;
+			if (token == null) {
+				return false;
+			}
+			switch (token.getType()) {
+				case HoshLexer.OPEN_CURLY:
+					return true;
+				case HoshLexer.PIPE:
+				case HoshLexer.SEMICOLON:
+				case HoshLexer.NEWLINE:
+				case HoshLexer.CLOSE_CURLY:
+					return false;
+				default:
+					break;
+			}
+		}
+		return false;
+	}
+
+	private AttributedStyle commandStyle(LineReader reader, String commandName, BooleanSupplier followedByBlock) {
+		Resolution resolution = resolutions.get(commandName);
+		if (resolution == null || System.nanoTime() - resolution.timestamp > RESOLUTION_TTL_NANOS) {
+			resolveLater(reader, commandName);
+			resolution = resolutions.get(commandName); // executor could run in the calling thread
+		}
+		if (resolution == null) {
+			return AttributedStyle.DEFAULT;
+		}
+		if (!resolution.known || resolution.wrapper && !followedByBlock.getAsBoolean()) {
+			return ERROR;
+		}
+		return COMMAND;
+	}
+
+	private void resolveLater(LineReader reader, String commandName) {
+		if (!pending.add(commandName)) {
+			return;
+		}
+		try {
+			executor.execute(() -> resolve(reader, commandName));
+		} catch (RejectedExecutionException e) {
+			LOGGER.log(Level.FINER, "cannot resolve in background", e);
+			pending.remove(commandName);
+		}
+	}
+
+	private void resolve(LineReader reader, String commandName) {
+		boolean changed;
+		try {
+			Optional<Command> command = commandResolver.tryResolve(commandName);
+			boolean known = command.isPresent();
+			// a wrapper is an error only when not followed by a block, see commandStyle()
+			boolean wrapper = command.filter(CommandWrapper.class::isInstance).isPresent();
+			if (resolutions.size() >= MAX_RESOLUTIONS) {
+				resolutions.clear();
+			}
+			Resolution previous = resolutions.put(commandName, new Resolution(known, wrapper, System.nanoTime()));
+			changed = previous == null || previous.known != known || previous.wrapper != wrapper;
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.FINER, "caught exception", e);
+			return;
+		} finally {
+			pending.remove(commandName);
+		}
+		if (changed) {
+			resolved.incrementAndGet();
+			redisplay(reader);
+		}
+	}
+
+	private void redisplay(LineReader reader) {
+		try {
+			reader.callWidget(LineReader.REDISPLAY);
+		} catch (IllegalStateException e) {
+			LOGGER.log(Level.FINER, "not reading a line", e);
+		}
+	}
+
+	private static class Resolution {
+
+		private final boolean known;
+
+		private final boolean wrapper;
+
+		private final long timestamp;
+
+		public Resolution(boolean known, boolean wrapper, long timestamp) {
+			this.known = known;
+			this.wrapper = wrapper;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * A token (or a lexical error, when token is null) at [start, end) of the buffer.
+	 */
+	private static class Lexeme {
+
+		private final Token token;
+
+		private final int start;
+
+		private final int end;
+
+		// lexed in default mode after whitespace: lexing can be resumed from here
+		private final boolean restartable;
+
+		public Lexeme(Token token, int start, int end, boolean restartable) {
+			this.token = token;
+			this.start = start;
+			this.end = end;
+			this.restartable = restartable;
+		}
+	}
+
+	/**
+	 * The buffer and its lexemes.
+	 */
+	private static class Lexed {
+
+		private final String buffer;
+
+		private final List<Lexeme> lexemes;
+
+		// computed once, i.e. repainting when a command has been resolved does not parse again
+		private int parseError = Integer.MIN_VALUE;
+
+		public Lexed(String buffer, List<Lexeme> lexemes) {
+			this.buffer = buffer;
+			this.lexemes = lexemes;
+		}
+
+		// keeps lexemes up to the last restartable one before the first change,
+		// then lexes the rest of the new buffer
+		public Lexed relex(String newBuffer) {
+			if (newBuffer.equals(buffer)) {
+				return this;
+			}
+			int unchanged = commonPrefix(buffer, newBuffer);
+			int keep = 0;
+			int offset = 0;
+			for (int i = 0; i < lexemes.size() && lexemes.get(i).start < unchanged; i++) {
+				if (lexemes.get(i).restartable) {
+					keep = i;
+					offset = lexemes.get(i).start;
+				}
+			}
+			List<Lexeme> result = new ArrayList<>(lexemes.subList(0, keep));
+			lex(newBuffer, offset, result);
+			return new Lexed(newBuffer, result);
+		}
+
+		// index of the first lexeme rejected by the parser, -1 when there is no error
+		public int parseError() {
+			if (parseError == Integer.MIN_VALUE) {
+				parseError = parse();
+			}
+			return parseError;
+		}
+
+		// same two-stage parsing of Parser: SLL is enough for almost every keystroke,
+		// LL is used only to confirm an error (and to find the offending token)
+		private int parse() {
+			List<Token> tokens = new ArrayList<>();
+			List<Integer> indexes = new ArrayList<>();
+			for (int i = 0; i < lexemes.size(); i++) {
+				Token token = lexemes.get(i).token;
+				if (token != null) {
+					tokens.add(token);
+					indexes.add(i);
+				}
+			}
+			CommonTokenStream stream = new CommonTokenStream(new ListTokenSource(tokens));
+			HoshParser parser = new HoshParser(stream);
+			parser.removeErrorListeners();
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			parser.setErrorHandler(new BailErrorStrategy());
+			try {
+				parser.program();
+				return -1;
+			} catch (ParseCancellationException e) {
+				stream.seek(0);
+				parser.reset();
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			}
+			try {
+				parser.program();
+				return -1;
+			} catch (ParseCancellationException e) {
+				if (!(e.getCause() instanceof RecognitionException)) {
+					return lexemes.size() - 1;
+				}
+				Token offending = ((RecognitionException) e.getCause()).getOffendingToken();
+				int index = offending == null ? -1 : offending.getTokenIndex();
+				if (index < 0 || index >= indexes.size()) { // unexpected end of input
+					return indexes.isEmpty() ? -1 : indexes.get(indexes.size() - 1);
+				}
+				return indexes.get(index);
+			}
+		}
+
+		private static void lex(String buffer, int offset, List<Lexeme> result) {
+			HoshLexer lexer = new HoshLexer(CharStreams.fromString(buffer.substring(offset)));
+			lexer.removeErrorListeners();
+			lexer.addErrorListener(new BaseErrorListener() {
+				@Override
+				public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+										String msg, RecognitionException e) {
+					int start = offset + lexer._tokenStartCharIndex;
+					int end = Math.min(buffer.length(), offset + lexer.getInputStream().index() + 1);
+					result.add(new Lexeme(null, start, end, false));
+				}
+			});
+			while (true) {
+				boolean defaultMode = lexer._mode == Lexer.DEFAULT_MODE;
+				Token token = lexer.nextToken();
+				if (token.getType() == Token.EOF) {
+					break;
+				}
+				int start = offset + token.getStartIndex();
+				int end = offset + token.getStopIndex() + 1;
+				boolean separated = start == 0 || Character.isWhitespace(buffer.charAt(start - 1));
+				result.add(new Lexeme(token, start, end, defaultMode && separated));
+			}
+		}
+
+		private static int commonPrefix(String a, String b) {
+			int length = Math.min(a.length(), b.length());
+			for (int i = 0; i < length; i++) {
+				if (a.charAt(i) != b.charAt(i)) {
+					return i;
+				}
+			}
+			return length;
+		}
+	}
 }
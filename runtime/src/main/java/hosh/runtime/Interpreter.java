@@ -32,15 +32,19 @@ import hosh.spi.OutputChannel;
 import hosh.spi.Record;
 import hosh.spi.Records;
 import hosh.spi.State;
+import hosh.spi.Transformer;
+import hosh.spi.Transformer.Transformation;
 import hosh.spi.Values;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class Interpreter {
 
@@ -48,16 +52,39 @@ public class Interpreter {
 
 	private final State state;
 	private final Injector injector;
+	private final ExecutorService executor;
 
 	public Interpreter(State state, Injector injector) {
 		this.state = state;
 		this.injector = injector;
+		this.executor = new ScopePropagatingExecutor(ThreadModes.newExecutor(state), state);
 	}
 
+	// shared by all statements of this session, see Supervisor
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	// statements are evaluated one after the other in a single supervised thread:
+	// the calling thread must be free to handle SIGINT, even if the command is
+	// stuck in a blocking operation that cannot be interrupted
 	public ExitStatus eval(Compiler.Program program, OutputChannel out, OutputChannel err) {
+		try (Supervisor supervisor = new Supervisor(executor)) {
+			// EXIT_STATUS is stored after each statement by evalStatements()
+			supervisor.submit(() -> evalStatements(program, out, err));
+			return supervisor.waitForAll();
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.SEVERE, "caught exception", e);
+			err.send(Records.singleton(Keys.ERROR, Values.ofText(messageFor(e.getCause()))));
+			store(ExitStatus.error());
+			return ExitStatus.error();
+		}
+	}
+
+	private ExitStatus evalStatements(Compiler.Program program, OutputChannel out, OutputChannel err) {
 		ExitStatus exitStatus = ExitStatus.success();
 		for (Compiler.Statement statement : program.getStatements()) {
-			exitStatus = evalUnderSupervision(statement, out, err);
+			exitStatus = evalInline(statement, out, err);
 			store(exitStatus);
 			if (userRequestedExit() || lastCommandFailed(exitStatus)) {
 				break;
@@ -79,11 +106,13 @@ public class Interpreter {
 		state.getVariables().put("EXIT_STATUS", String.valueOf(exitStatus.value()));
 	}
 
-	private ExitStatus evalUnderSupervision(Compiler.Statement statement, OutputChannel out, OutputChannel err) {
-		try (Supervisor supervisor = new Supervisor()) {
-			supervisor.submit(() -> eval(statement, new NullChannel(), out, err));
-			return supervisor.waitForAll();
-		} catch (ExecutionException e) {
+	private ExitStatus evalInline(Compiler.Statement statement, OutputChannel out, OutputChannel err) {
+		try {
+			return eval(statement, new NullChannel(), out, err);
+		} catch (CancellationException e) {
+			LOGGER.log(Level.INFO, "got cancellation", e);
+			return ExitStatus.error();
+		} catch (RuntimeException e) {
 			LOGGER.log(Level.SEVERE, "caught exception", e);
 			Record record = Records.builder()
 				                .entry(Keys.LOCATION, Values.ofText(statement.getLocation()))
@@ -96,37 +125,66 @@ public class Interpreter {
 
 	protected ExitStatus eval(Compiler.Statement statement, InputChannel in, OutputChannel out, OutputChannel err) {
 		Command command = statement.getCommand();
-		injectInterpreter(command);
-		injector.injectDeps(command);
-		List<String> resolvedArguments = resolveArguments(statement.getArguments());
+		injectDeps(command);
+		List<String> resolvedArguments = resolveArguments(statement);
 		changeCurrentThreadName(statement.getLocation(), resolvedArguments);
-		return command.run(resolvedArguments, in, out, new WithLocation(err, statement.getLocation()));
+		Events.StatementEvent event = new Events.StatementEvent();
+		event.begin();
+		ExitStatus exitStatus = ExitStatus.error();
+		try {
+			exitStatus = command.run(resolvedArguments, in, out, new WithLocation(err, statement.getLocation()));
+			return exitStatus;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.command = command.getClass().getSimpleName();
+				event.location = statement.getLocation();
+				event.exitStatus = exitStatus.value();
+				event.commit();
+			}
+		}
 	}
 
-	private void injectInterpreter(Command command) {
+	// transformers fused with the previous stage of a pipeline are never run, see PipelineCommand
+	protected Optional<Transformation> prepare(Compiler.Statement statement, OutputChannel err) {
+		Transformer transformer = (Transformer) statement.getCommand();
+		injectDeps(transformer);
+		List<String> resolvedArguments = resolveArguments(statement);
+		return transformer.prepare(resolvedArguments, new WithLocation(err, statement.getLocation()));
+	}
+
+	protected void injectDeps(Command command) {
 		if (command instanceof InterpreterAware) {
 			((InterpreterAware) command).setInterpreter(this);
 		}
+		injector.injectDeps(command);
 	}
 
 	private void changeCurrentThreadName(String commandName, List<String> resolvedArguments) {
-		List<String> commandWithArguments = new ArrayList<>();
-		commandWithArguments.add(commandName);
-		commandWithArguments.addAll(resolvedArguments);
-		String name = String.format("command='%s'", String.join(" ", commandWithArguments));
-		Thread.currentThread().setName(name);
+		StringBuilder name = new StringBuilder("command='").append(commandName);
+		for (String argument : resolvedArguments) {
+			name.append(' ').append(argument);
+		}
+		Thread.currentThread().setName(name.append('\'').toString());
 	}
 
-	private List<String> resolveArguments(List<Compiler.Resolvable> arguments) {
-		return arguments
-			       .stream()
-			       .map(resolvable -> resolvable.resolve(state))
-			       .collect(Collectors.toList());
+	// called for each evaluation of a statement, i.e. once per record inside a lambda
+	private List<String> resolveArguments(Compiler.Statement statement) {
+		Optional<List<String>> constantArguments = statement.getConstantArguments();
+		if (constantArguments.isPresent()) {
+			return constantArguments.get();
+		}
+		List<Compiler.Resolvable> arguments = statement.getArguments();
+		List<String> result = new ArrayList<>(arguments.size());
+		for (Compiler.Resolvable resolvable : arguments) {
+			result.add(resolvable.resolve(state));
+		}
+		return result;
 	}
 
-	private String messageFor(ExecutionException e) {
-		if (e.getCause() != null && e.getCause().getMessage() != null) {
-			return e.getCause().getMessage();
+	private String messageFor(Throwable e) {
+		if (e != null && e.getMessage() != null) {
+			return e.getMessage();
 		} else {
 			return "(no message provided)";
 		}
@@ -149,5 +207,10 @@ public class Interpreter {
 		public void send(Record record) {
 			channel.send(record.prepend(Keys.LOCATION, Values.ofText(location)));
 		}
+
+		@Override
+		public boolean isDone() {
+			return channel.isDone();
+		}
 	}
 }
@@ -35,13 +35,13 @@ import hosh.spi.Record;
 import hosh.spi.State;
 import hosh.spi.StateAware;
 import hosh.spi.Value;
+import hosh.spi.VariableFrame;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-// generated by compiler for 'cmd | { key -> cmd ${path} }'
+// generated by compiler for 'cmd | { key -> cmd ${path} }' and 'cmd | parallel 4 { key -> cmd ${path} }'
 class LambdaCommand implements Command, InterpreterAware, StateAware {
 
 	private final Compiler.Statement statement;
@@ -75,23 +75,25 @@ class LambdaCommand implements Command, InterpreterAware, StateAware {
 				return ExitStatus.error();
 			}
 			Value value = lambdaParameter.orElseThrow(IllegalArgumentException::new);
-			Map<String, String> original = state.getVariables();
-			Map<String, String> modified = new HashMap<>(original);
-			modified.put(key, value.unwrap(String.class).orElse("unwrap failed"));
-			state.setVariables(modified);
-			try {
+			// bound to the current thread only: copies of this command may run concurrently, see 'parallel'
+			Map<String, String> frame = new VariableFrame(enclosingScope(), key, value.unwrap(String.class).orElse("unwrap failed"));
+			// any change made by inner statement to variable will be lost when leaving the scope
+			try (State.Scope ignored = state.enterScope(frame)) {
 				ExitStatus eval = interpreter.eval(statement, in, out, err);
 				if (eval.isError()) {
 					return eval;
 				}
-			} finally {
-				// any change made by inner statement to variable will be lost here
-				state.setVariables(original);
 			}
 		}
 		return ExitStatus.success();
 	}
 
+	// the frame is read by all stages of the body: it encloses the frame of the outer lambda, if any,
+	// otherwise the current snapshot of the shell variables (taken without copying them)
+	private Map<String, String> enclosingScope() {
+		return state.getScope().orElseGet(state::getVariablesSnapshot);
+	}
+
 	public String getKey() {
 		return key;
 	}
@@ -0,0 +1,332 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.Compiler.Statement;
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.Command;
+import hosh.spi.Errors;
+import hosh.spi.ExitStatus;
+import hosh.spi.InputChannel;
+import hosh.spi.Key;
+import hosh.spi.Keys;
+import hosh.spi.LoggerFactory;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Value;
+import hosh.spi.Values;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Several copies (lanes) of the same statement running concurrently,
+ * each of them receiving a share of the input records (i.e. 'parallel 4 { regex text ... }'
+ * or 'partition ip 4 { freq ip }').
+ * <p>
+ * The calling thread dispatches the input records, while a supervised task merges
+ * the output of all lanes: in this way the output channel still has a single producer.
+ */
+class Lanes {
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	// sent by a lane once it is done with an input record (ordered mode only)
+	private final Record endOfSequence = Records.singleton(Keys.of("endofsequence"), Values.none());
+
+	private final Interpreter interpreter;
+
+	private final Statement statement;
+
+	private final int count;
+
+	public Lanes(Interpreter interpreter, Statement statement, int count) {
+		this.interpreter = interpreter;
+		this.statement = statement;
+		this.count = count;
+	}
+
+	// every record is taken by the first idle lane,
+	// output records are sent as soon as they are available
+	public ExitStatus runUnordered(InputChannel in, OutputChannel out, OutputChannel err) {
+		PipelineChannel work = new PipelineChannel();
+		PipelineChannel merged = new PipelineChannel();
+		AtomicInteger running = new AtomicInteger(count);
+		try (Supervisor supervisor = newSupervisor()) {
+			for (int i = 0; i < count; i++) {
+				supervisor.submit(() -> {
+					try {
+						return evalLane(work, merged, err);
+					} finally {
+						if (running.decrementAndGet() == 0) {
+							work.stopProducer();
+							merged.stopConsumer();
+						}
+					}
+				});
+			}
+			supervisor.submit(() -> merge(merged, out));
+			dispatch(in, out, running, work::send);
+			for (int i = 0; i < count; i++) {
+				work.stopConsumer();
+			}
+			return waitForAll(supervisor);
+		}
+	}
+
+	// the n-th input record (i.e. sequence number) is sent to lane n % count,
+	// output records are sent following the sequence numbers of the input records
+	public ExitStatus runOrdered(InputChannel in, OutputChannel out, OutputChannel err) {
+		if (!isSequential(statement.getCommand())) {
+			err.send(Errors.message("ordered mode needs a command sending its output in the thread reading the input, use 'unordered'"));
+			return ExitStatus.error();
+		}
+		List<PipelineChannel> inputs = new ArrayList<>(count);
+		List<PipelineChannel> outputs = new ArrayList<>(count);
+		AtomicInteger running = new AtomicInteger(count);
+		try (Supervisor supervisor = newSupervisor()) {
+			for (int i = 0; i < count; i++) {
+				PipelineChannel input = new PipelineChannel();
+				PipelineChannel output = new PipelineChannel();
+				inputs.add(input);
+				outputs.add(output);
+				supervisor.submit(() -> {
+					SequencedChannel sequenced = new SequencedChannel(input, output);
+					try {
+						return evalLane(sequenced, output, err);
+					} finally {
+						sequenced.end();
+						input.stopProducer();
+						output.stopConsumer();
+						running.decrementAndGet();
+					}
+				});
+			}
+			supervisor.submit(() -> mergeInOrder(outputs, out));
+			long[] sequence = { 0 };
+			dispatch(in, out, running, record -> sendToLane(inputs.get((int) (sequence[0]++ % count)), record));
+			inputs.forEach(PipelineChannel::stopConsumer);
+			return waitForAll(supervisor);
+		}
+	}
+
+	// all records having the same value for key are sent to the same lane,
+	// output records are sent as soon as they are available
+	// (records are cheap to handle for hash-based commands like 'freq': batching keeps the dispatcher busy)
+	public ExitStatus runPartitioned(Key key, InputChannel in, OutputChannel out, OutputChannel err) {
+		List<Pipe> inputs = new ArrayList<>(count);
+		PipelineChannel merged = new PipelineChannel();
+		AtomicInteger running = new AtomicInteger(count);
+		try (Supervisor supervisor = newSupervisor()) {
+			for (int i = 0; i < count; i++) {
+				Pipe input = new BatchingChannel();
+				inputs.add(input);
+				supervisor.submit(() -> {
+					try {
+						return evalLane(input, merged, err);
+					} finally {
+						input.stopProducer();
+						if (running.decrementAndGet() == 0) {
+							merged.stopConsumer();
+						}
+					}
+				});
+			}
+			supervisor.submit(() -> merge(merged, out));
+			dispatch(in, out, running, record -> sendToLane(inputs.get(partitionOf(record, key)), record));
+			inputs.forEach(Pipe::stopConsumer);
+			return waitForAll(supervisor);
+		}
+	}
+
+	// the output for an input record is followed by endOfSequence only when the lane sends it
+	// from the thread calling recv(): external commands pump stdin and stdout in different threads,
+	// while pipelines not fused in a single stage run every stage in its own thread
+	private boolean isSequential(Command command) {
+		if (command instanceof ExternalCommand || command instanceof DefaultCommandDecorator) {
+			return false;
+		}
+		if (command instanceof SequenceCommand) {
+			SequenceCommand sequenceCommand = (SequenceCommand) command;
+			return isSequential(sequenceCommand.getFirst().getCommand()) && isSequential(sequenceCommand.getSecond().getCommand());
+		}
+		if (command instanceof PipelineCommand) {
+			PipelineCommand pipelineCommand = (PipelineCommand) command;
+			interpreter.injectDeps(pipelineCommand);
+			return pipelineCommand.runsInline() && isSequential(pipelineCommand.getProducer().getCommand());
+		}
+		// lambdas evaluate their body once for each record, waiting for it
+		return true;
+	}
+
+	// records without key end up in the first lane
+	private int partitionOf(Record record, Key key) {
+		int hash = record.value(key).map(Value::hashCode).orElse(0);
+		return Math.floorMod(hash ^ (hash >>> 16), count);
+	}
+
+	private void sendToLane(OutputChannel input, Record record) {
+		try {
+			input.send(record);
+		} catch (ProducerPoisonPill e) {
+			LOGGER.fine("lane already finished, dropping record");
+		}
+	}
+
+	private Supervisor newSupervisor() {
+		Supervisor supervisor = new Supervisor(interpreter.getExecutor());
+		supervisor.setHandleSignals(false);
+		return supervisor;
+	}
+
+	private void dispatch(InputChannel in, OutputChannel out, AtomicInteger running, Consumer<Record> lanes) {
+		try {
+			while (running.get() > 0 && !out.isDone() && !Thread.currentThread().isInterrupted()) {
+				Optional<Record> record = in.recv();
+				if (record.isEmpty()) {
+					break;
+				}
+				lanes.accept(record.get());
+			}
+		} catch (ProducerPoisonPill e) {
+			LOGGER.fine("all lanes finished");
+		}
+	}
+
+	private ExitStatus evalLane(InputChannel in, OutputChannel out, OutputChannel err) {
+		try {
+			return interpreter.eval(statement, in, out, err);
+		} catch (ProducerPoisonPill e) {
+			return ExitStatus.success();
+		}
+	}
+
+	private ExitStatus merge(PipelineChannel merged, OutputChannel out) {
+		try {
+			while (true) {
+				Optional<Record> record = merged.recv();
+				if (record.isEmpty()) {
+					break;
+				}
+				out.send(record.get());
+			}
+		} catch (ProducerPoisonPill e) {
+			merged.stopProducer();
+		}
+		return ExitStatus.success();
+	}
+
+	private ExitStatus mergeInOrder(List<PipelineChannel> outputs, OutputChannel out) {
+		boolean[] finished = new boolean[count];
+		int running = count;
+		try {
+			for (long sequence = 0; running > 0; sequence++) {
+				int lane = (int) (sequence % count);
+				if (finished[lane]) {
+					continue;
+				}
+				while (true) {
+					Optional<Record> record = outputs.get(lane).recv();
+					if (record.isEmpty()) {
+						finished[lane] = true;
+						running--;
+						break;
+					}
+					if (record.get() == endOfSequence) {
+						break;
+					}
+					out.send(record.get());
+				}
+			}
+		} catch (ProducerPoisonPill e) {
+			outputs.forEach(PipelineChannel::stopProducer);
+		}
+		return ExitStatus.success();
+	}
+
+	// interrupted while dispatching or waiting: the consumer is done or the user pressed ctrl-C,
+	// closing the supervisor cancels the lanes
+	private ExitStatus waitForAll(Supervisor supervisor) {
+		try {
+			ExitStatus exitStatus = supervisor.waitForAll();
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("lanes interrupted");
+			}
+			return exitStatus;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException("caught exception", cause);
+		}
+	}
+
+	// a lane asking for the next input record is done with the previous one:
+	// this holds for commands handling one record at a time in a single thread
+	// (i.e. 'regex', 'select' or a lambda)
+	private class SequencedChannel implements InputChannel {
+
+		private final InputChannel in;
+
+		private final OutputChannel out;
+
+		private boolean pending = false;
+
+		public SequencedChannel(InputChannel in, OutputChannel out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		@Override
+		public Optional<Record> recv() {
+			endOfSequence();
+			Optional<Record> record = in.recv();
+			pending = record.isPresent();
+			return record;
+		}
+
+		public void end() {
+			try {
+				endOfSequence();
+			} catch (ProducerPoisonPill e) {
+				LOGGER.fine("merger already finished");
+			}
+		}
+
+		private void endOfSequence() {
+			if (pending) {
+				pending = false;
+				out.send(endOfSequence);
+			}
+		}
+	}
+}
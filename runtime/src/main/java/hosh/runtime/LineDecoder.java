@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the output of an external command into lines, as
+ * {@link java.io.BufferedReader#readLine()} does ('\n', '\r' or "\r\n").
+ * <p>
+ * A whole buffer is decoded at a time and all the lines found in it are
+ * returned together: the buffers are reused, only the lines are allocated.
+ */
+class LineDecoder implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream inputStream;
+
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+		                                       .onMalformedInput(CodingErrorAction.REPLACE)
+		                                       .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	private final ByteBuffer bytes;
+
+	private final CharBuffer chars;
+
+	// a line spanning more than one buffer
+	private final StringBuilder partial = new StringBuilder();
+
+	private final List<String> lines = new ArrayList<>();
+
+	// the previous buffer ended with '\r', maybe followed by '\n'
+	private boolean skipLineFeed;
+
+	private boolean endOfInput;
+
+	public LineDecoder(InputStream inputStream) {
+		this(inputStream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public LineDecoder(InputStream inputStream, int bufferSize) {
+		this.inputStream = inputStream;
+		this.bytes = ByteBuffer.allocate(bufferSize);
+		this.chars = CharBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Blocks until at least one line is available: the returned list
+	 * is reused by the next call. Empty at the end of the stream.
+	 */
+	public List<String> readLines() throws IOException {
+		lines.clear();
+		while (lines.isEmpty() && !endOfInput) {
+			int read = inputStream.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			if (read == -1) {
+				endOfInput = true;
+			} else {
+				bytes.position(bytes.position() + read);
+			}
+			decode();
+		}
+		return lines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+
+	private void decode() {
+		bytes.flip();
+		while (true) {
+			CoderResult result = decoder.decode(bytes, chars, endOfInput);
+			split();
+			if (result.isUnderflow()) {
+				break;
+			}
+		}
+		bytes.compact();
+		if (endOfInput) {
+			decoder.flush(chars);
+			split();
+			if (partial.length() > 0) {
+				lines.add(partial.toString());
+				partial.setLength(0);
+			}
+		}
+	}
+
+	private void split() {
+		char[] array = chars.array();
+		int limit = chars.position();
+		int start = 0;
+		for (int i = 0; i < limit; i++) {
+			char c = array[i];
+			if (c == '\n' && skipLineFeed) {
+				skipLineFeed = false;
+				start = i + 1;
+				continue;
+			}
+			skipLineFeed = false;
+			if (c == '\n' || c == '\r') {
+				lines.add(line(array, start, i));
+				skipLineFeed = c == '\r';
+				start = i + 1;
+			}
+		}
+		partial.append(array, start, limit - start);
+		chars.clear();
+	}
+
+	private String line(char[] array, int start, int end) {
+		if (partial.length() == 0) {
+			return new String(array, start, end - start);
+		}
+		String result = partial.append(array, start, end - start).toString();
+		partial.setLength(0);
+		return result;
+	}
+}
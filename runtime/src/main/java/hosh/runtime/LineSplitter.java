@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the output of an external command into lines of raw bytes,
+ * without decoding them: each line keeps its '\n' terminator (if any),
+ * so writing all of them back reproduces the original stream.
+ * <p>
+ * As {@link LineDecoder}, a whole buffer is split at a time.
+ */
+class LineSplitter implements Closeable {
+
+	private final InputStream inputStream;
+
+	private final byte[] buffer;
+
+	// a line spanning more than one buffer
+	private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+	private final List<byte[]> lines = new ArrayList<>();
+
+	private boolean endOfInput;
+
+	public LineSplitter(InputStream inputStream) {
+		this(inputStream, LineDecoder.DEFAULT_BUFFER_SIZE);
+	}
+
+	public LineSplitter(InputStream inputStream, int bufferSize) {
+		this.inputStream = inputStream;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Blocks until at least one line is available: the returned list
+	 * is reused by the next call. Empty at the end of the stream.
+	 */
+	public List<byte[]> readLines() throws IOException {
+		lines.clear();
+		while (lines.isEmpty() && !endOfInput) {
+			int read = inputStream.read(buffer);
+			if (read == -1) {
+				endOfInput = true;
+				if (partial.size() > 0) {
+					lines.add(partial.toByteArray());
+					partial.reset();
+				}
+			} else {
+				split(read);
+			}
+		}
+		return lines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+
+	private void split(int limit) {
+		int start = 0;
+		for (int i = 0; i < limit; i++) {
+			if (buffer[i] == '\n') {
+				lines.add(line(start, i + 1));
+				start = i + 1;
+			}
+		}
+		partial.write(buffer, start, limit - start);
+	}
+
+	private byte[] line(int start, int end) {
+		if (partial.size() == 0) {
+			return Arrays.copyOfRange(buffer, start, end);
+		}
+		partial.write(buffer, start, end - start);
+		byte[] result = partial.toByteArray();
+		partial.reset();
+		return result;
+	}
+}
@@ -25,17 +25,23 @@ package hosh.runtime;
 
 import hosh.runtime.antlr4.HoshLexer;
 import hosh.runtime.antlr4.HoshParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 /**
  * Facade for ANTLR4 runtime.
  */
 public class Parser {
 
+	// two-stage parsing: SLL is much faster than LL on long scripts,
+	// LL is used only when SLL fails (e.g. syntax errors)
 	HoshParser.ProgramContext parse(String input) {
 		HoshLexer lexer = new HoshLexer(CharStreams.fromString(input));
 		lexer.removeErrorListeners();
@@ -43,8 +49,18 @@ public class Parser {
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		HoshParser parser = new HoshParser(tokens);
 		parser.removeErrorListeners();
-		parser.addErrorListener(new CustomErrorListener());
-		return parser.program();
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			return parser.program();
+		} catch (ParseCancellationException e) {
+			tokens.seek(0);
+			parser.reset();
+			parser.addErrorListener(new CustomErrorListener());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			return parser.program();
+		}
 	}
 
 	public static class ParseError extends RuntimeException {
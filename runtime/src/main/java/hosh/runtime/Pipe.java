@@ -0,0 +1,48 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.InputChannel;
+import hosh.spi.OutputChannel;
+
+/**
+ * A channel connecting two adjacent stages of a pipeline:
+ * the producer stage sends records, the consumer stage receives them.
+ * <p>
+ * Each side signals the other one when it is done.
+ */
+public interface Pipe extends InputChannel, OutputChannel {
+
+	/**
+	 * Called when the consumer is done: any further send() will
+	 * throw {@link PipelineChannel.ProducerPoisonPill}.
+	 */
+	void stopProducer();
+
+	/**
+	 * Called when the producer is done: recv() will yield
+	 * {@link java.util.Optional#empty()} after all pending records.
+	 */
+	void stopConsumer();
+}
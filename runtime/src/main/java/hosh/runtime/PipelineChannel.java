@@ -23,10 +23,8 @@
  */
 package hosh.runtime;
 
-import hosh.spi.InputChannel;
 import hosh.spi.Keys;
 import hosh.spi.LoggerFactory;
-import hosh.spi.OutputChannel;
 import hosh.spi.Record;
 import hosh.spi.Records;
 import hosh.spi.Values;
@@ -36,7 +34,11 @@ import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-public class PipelineChannel implements InputChannel, OutputChannel {
+/**
+ * Direct hand-off between producer and consumer: every record is transferred
+ * one by one, as soon as the consumer is ready to take it.
+ */
+public class PipelineChannel implements Pipe {
 
 	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
 
@@ -53,9 +55,12 @@ public class PipelineChannel implements InputChannel, OutputChannel {
 
 	@Override
 	public Optional<Record> recv() {
+		Events.ChannelWaitEvent event = new Events.ChannelWaitEvent();
+		event.begin();
 		try {
 			LOGGER.finer("waiting for record...");
 			Record record = queue.take();
+			commit(event, "recv");
 			if (record == poisonPill) {
 				LOGGER.finer("got poison pill");
 				return Optional.empty();
@@ -74,24 +79,46 @@ public class PipelineChannel implements InputChannel, OutputChannel {
 		if (done) {
 			throw new ProducerPoisonPill();
 		}
+		Events.ChannelWaitEvent event = new Events.ChannelWaitEvent();
+		event.begin();
 		try {
 			do {
 				boolean transferred = queue.tryTransfer(record, 50, TimeUnit.MILLISECONDS);
 				if (transferred) {
+					commit(event, "send");
 					return;
 				}
+				// consumer still busy with the previous record
 				LOGGER.finer("send failed, retry...");
-			} while (queue.hasWaitingConsumer());
+			} while (!done);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
+			return;
 		}
+		throw new ProducerPoisonPill();
 	}
 
+	private void commit(Events.ChannelWaitEvent event, String operation) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.channel = "direct";
+			event.operation = operation;
+			event.commit();
+		}
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	@Override
 	public void stopProducer() {
 		LOGGER.fine("producer stop requested");
 		done = true;
 	}
 
+	@Override
 	public void stopConsumer() {
 		LOGGER.fine("consumer stop requested");
 		done = true;
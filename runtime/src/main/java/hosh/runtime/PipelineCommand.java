@@ -28,12 +28,22 @@ import hosh.spi.Command;
 import hosh.spi.ExitStatus;
 import hosh.spi.InputChannel;
 import hosh.spi.OutputChannel;
+import hosh.spi.State;
+import hosh.spi.StateAware;
+import hosh.spi.Transformer;
+import hosh.spi.Transformer.Transformation;
 
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 // generated by compiler for 'cmd | cmd1 | cmd2 | ...'
-class PipelineCommand implements Command, InterpreterAware {
+class PipelineCommand implements Command, InterpreterAware, StateAware {
 
 	private final Statement producer;
 
@@ -41,6 +51,8 @@ class PipelineCommand implements Command, InterpreterAware {
 
 	private Interpreter interpreter;
 
+	private State state;
+
 	public PipelineCommand(Statement producer, Statement consumer) {
 		this.producer = producer;
 		this.consumer = consumer;
@@ -64,6 +76,11 @@ class PipelineCommand implements Command, InterpreterAware {
 		this.interpreter = interpreter;
 	}
 
+	@Override
+	public void setState(State state) {
+		this.state = state;
+	}
+
 	// Used to control to control pipe of an external command.
 	// Inspired by implementation of
 	// java.lang.ProcessBuilder.startPipeline(List<ProcessBuilder).
@@ -93,15 +110,61 @@ class PipelineCommand implements Command, InterpreterAware {
 		public boolean redirectOutput() {
 			return redirectOutput;
 		}
+
+		public static Position of(boolean redirectInput, boolean redirectOutput) {
+			for (Position position : values()) {
+				if (position.redirectInput == redirectInput && position.redirectOutput == redirectOutput) {
+					return position;
+				}
+			}
+			throw new IllegalArgumentException("unreachable");
+		}
 	}
 
 	@Override
 	public ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
-		try (Supervisor supervisor = new Supervisor()) {
+		List<Stage> stages = stages();
+		List<Pipe> links = new ArrayList<>();
+		for (int i = 1; i < stages.size(); i++) {
+			links.add(selectPipes(stages.get(i)).get());
+		}
+		Optional<OutputChannel> statsChannel = StageStats.channel();
+		List<OutputChannel> outputs = new ArrayList<>();
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			statsChannel.ifPresent(stage::collectStats);
+			Optional<OutputChannel> output = fuse(stage.fused, stage.meter(downstreamOf(i, links, out)), err);
+			if (output.isEmpty()) {
+				return ExitStatus.error();
+			}
+			outputs.add(output.get());
+		}
+		if (runsInline(stages)) {
+			// everything has been fused in a single stage: no need to pay for a thread hand-off
+			Stage stage = stages.get(0);
+			try {
+				return runStage(stage, null, in, outputs.get(0), out, err, Position.of(false, !stage.fused.isEmpty()));
+			} finally {
+				stage.reportStats();
+			}
+		}
+		try (Supervisor supervisor = new Supervisor(interpreter.getExecutor())) {
 			supervisor.setHandleSignals(false);
-			PipelineChannel pipelineChannel = new PipelineChannel();
-			runAsync(supervisor, producer, in, pipelineChannel, err, Position.FIRST);
-			assemblePipeline(supervisor, consumer, pipelineChannel, out, err);
+			for (int i = 0; i < stages.size(); i++) {
+				Stage stage = stages.get(i);
+				Stage previous = i == 0 ? null : stages.get(i - 1);
+				InputChannel upstream = i == 0 ? in : links.get(i - 1);
+				boolean last = i == stages.size() - 1;
+				Position position = Position.of(i > 0, !last || !stage.fused.isEmpty());
+				OutputChannel output = outputs.get(i);
+				OutputChannel downstream = downstreamOf(i, links, out);
+				Callable<ExitStatus> task = () -> runStage(stage, previous, upstream, output, downstream, err, position);
+				if (last) {
+					supervisor.submitConsumer(task);
+				} else {
+					supervisor.submit(task);
+				}
+			}
 			return supervisor.waitForAll();
 		} catch (ExecutionException e) {
 			Throwable cause = e.getCause();
@@ -109,53 +172,281 @@ class PipelineCommand implements Command, InterpreterAware {
 				throw (RuntimeException) cause;
 			}
 			throw new RuntimeException("caught exception", cause);
+		} finally {
+			stages.forEach(Stage::reportStats);
 		}
 	}
 
-	private void assemblePipeline(Supervisor supervisor, Statement statement, InputChannel in, OutputChannel out, OutputChannel err) {
-		if (statement.getCommand() instanceof PipelineCommand) {
-			PipelineCommand pipelineCommand = (PipelineCommand) statement.getCommand();
-			PipelineChannel pipelineChannel = new PipelineChannel();
-			runAsync(supervisor, pipelineCommand.producer, in, pipelineChannel, err, Position.MIDDLE);
-			assemblePipeline(supervisor, pipelineCommand.consumer, pipelineChannel, out, err);
-		} else {
-			runAsync(supervisor, statement, in, out, err, Position.LAST);
+	// explicitly requested by the user or batching unless the records are consumed
+	// by another process, maybe interactively (i.e. 'rand | less');
+	// external commands produce records in bursts, a buffer of output at a time
+	private Supplier<Pipe> selectPipes(Stage consumerStage) {
+		String requested = state.getVariables().get(Pipes.HOSH_PIPELINE_CHANNEL);
+		if (requested != null) {
+			return Pipes.byName(requested);
+		}
+		if (consumerStage.isExternal()) {
+			return Pipes.byName(Pipes.DIRECT);
 		}
+		return Pipes.byName(Pipes.BATCHING);
 	}
 
-	private void runAsync(Supervisor supervisor, Statement statement, InputChannel in, OutputChannel out, OutputChannel err, Position position) {
-		supervisor.submit(() -> {
-			Command command = statement.getCommand();
-			pipelinePosition(position, command);
-			try {
-				return interpreter.eval(statement, in, out, err);
-			} catch (PipelineChannel.ProducerPoisonPill e) {
+	// everything fused in a single stage of built-in commands, running in the calling thread
+	public boolean runsInline() {
+		return runsInline(stages());
+	}
+
+	private boolean runsInline(List<Stage> stages) {
+		return stages.size() == 1 && isAllBuiltins();
+	}
+
+	private boolean isAllBuiltins() {
+		return statements().stream().noneMatch(statement -> statement.getCommand() instanceof ExternalCommand);
+	}
+
+	private boolean isFusionEnabled() {
+		return Boolean.parseBoolean(state.getVariables().getOrDefault(Pipes.HOSH_PIPELINE_FUSION, "true"));
+	}
+
+	// 'a | b | c' is compiled as 'a | (b | c)'
+	private List<Statement> statements() {
+		List<Statement> result = new ArrayList<>();
+		result.add(producer);
+		Statement next = consumer;
+		while (next.getCommand() instanceof PipelineCommand) {
+			PipelineCommand pipelineCommand = (PipelineCommand) next.getCommand();
+			result.add(pipelineCommand.producer);
+			next = pipelineCommand.consumer;
+		}
+		result.add(next);
+		return result;
+	}
+
+	// transformers are fused with the previous stage, if any;
+	// adjacent external commands are connected by OS pipes in a single stage
+	private List<Stage> stages() {
+		boolean fusion = isFusionEnabled();
+		List<Stage> stages = new ArrayList<>();
+		for (Statement statement : statements()) {
+			Stage previous = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+			if (fusion && previous != null && statement.getCommand() instanceof Transformer) {
+				previous.fused.add(statement);
+			} else if (previous != null && previous.canPipeTo(statement)) {
+				previous.piped.add(statement);
+			} else {
+				stages.add(new Stage(statement));
+			}
+		}
+		for (int i = 1; i < stages.size(); i++) {
+			Stage previous = stages.get(i - 1);
+			previous.rawBytes = previous.canSendRawBytesTo(stages.get(i));
+		}
+		return stages;
+	}
+
+	private OutputChannel downstreamOf(int i, List<Pipe> links, OutputChannel out) {
+		return i < links.size() ? links.get(i) : out;
+	}
+
+	private Optional<OutputChannel> fuse(List<Statement> fused, OutputChannel out, OutputChannel err) {
+		List<Transformation> transformations = new ArrayList<>();
+		for (Statement statement : fused) {
+			Optional<Transformation> transformation = interpreter.prepare(statement, err);
+			if (transformation.isEmpty()) {
+				return Optional.empty();
+			}
+			transformations.add(transformation.get());
+		}
+		OutputChannel result = out;
+		for (int i = transformations.size() - 1; i >= 0; i--) {
+			result = new FusedChannel(transformations.get(i), result);
+		}
+		return Optional.of(result);
+	}
+
+	private ExitStatus runStage(Stage stage, Stage upstream, InputChannel in, OutputChannel out, OutputChannel downstream, OutputChannel err, Position position) {
+		if (stage.stats == null) {
+			return evalStage(stage, upstream, in, out, downstream, err, position);
+		}
+		return stage.stats.measure(() -> evalStage(stage, upstream, in, out, downstream, err, position));
+	}
+
+	// a stage woken up by its consumer succeeds, as it happens for a producer stopped by ProducerPoisonPill
+	private ExitStatus evalStage(Stage stage, Stage upstream, InputChannel in, OutputChannel out, OutputChannel downstream, OutputChannel err, Position position) {
+		Command command = stage.statement.getCommand();
+		pipelinePosition(position, command, stage);
+		stage.started();
+		try {
+			ExitStatus exitStatus = interpreter.eval(stage.statement, stage.meter(in), out, err);
+			endFused(out);
+			return exitStatus;
+		} catch (PipelineChannel.ProducerPoisonPill e) {
+			endFused(out);
+			return ExitStatus.success();
+		} catch (CancellationException | UncheckedIOException e) {
+			if (stage.isCancelled()) {
 				return ExitStatus.success();
-			} finally {
-				stopProducer(in);
-				stopConsumer(out);
 			}
-		});
+			throw e;
+		} finally {
+			stage.finished();
+			stopProducer(in);
+			stopConsumer(downstream);
+			if (upstream != null) {
+				upstream.cancel();
+			}
+		}
 	}
 
-	private void pipelinePosition(Position position, Command command) {
+	private void endFused(OutputChannel out) {
+		if (out instanceof FusedChannel) {
+			FusedChannel fusedChannel = (FusedChannel) out;
+			fusedChannel.end();
+		}
+	}
+
+	private void pipelinePosition(Position position, Command command, Stage stage) {
 		if (command instanceof ExternalCommand) {
 			ExternalCommand externalCommand = (ExternalCommand) command;
 			externalCommand.pipeline(position);
+			externalCommand.pipeTo(commandLines(stage.piped));
+			externalCommand.sendRawBytes(stage.rawBytes);
+		}
+	}
+
+	private List<List<String>> commandLines(List<Statement> piped) {
+		List<List<String>> result = new ArrayList<>(piped.size());
+		for (Statement statement : piped) {
+			ExternalCommand externalCommand = (ExternalCommand) statement.getCommand();
+			List<String> arguments = new ArrayList<>();
+			for (Compiler.Resolvable argument : statement.getArguments()) {
+				arguments.add(argument.resolve(state));
+			}
+			result.add(externalCommand.commandLine(arguments));
 		}
+		return result;
 	}
 
 	private void stopConsumer(OutputChannel out) {
-		if (out instanceof PipelineChannel) {
-			PipelineChannel pipelineChannel = (PipelineChannel) out;
-			pipelineChannel.stopConsumer();
+		if (out instanceof Pipe) {
+			Pipe pipe = (Pipe) out;
+			pipe.stopConsumer();
 		}
 	}
 
 	private void stopProducer(InputChannel in) {
-		if (in instanceof PipelineChannel) {
-			PipelineChannel pipelineChannel = (PipelineChannel) in;
-			pipelineChannel.stopProducer();
+		if (in instanceof Pipe) {
+			Pipe pipe = (Pipe) in;
+			pipe.stopProducer();
+		}
+	}
+
+	// a statement running in its own thread, followed by zero or more external commands
+	// connected by OS pipes and then by zero or more fused transformers
+	private static class Stage {
+
+		private final Statement statement;
+
+		// external commands connected by OS pipes to the statement (an external command too)
+		private final List<Statement> piped = new ArrayList<>();
+
+		private final List<Statement> fused = new ArrayList<>();
+
+		// output of external commands going to the next stage without decoding it
+		private boolean rawBytes = false;
+
+		// only inside 'withStats { ... }'
+		private StageStats stats;
+
+		// guarded by this
+		private Thread thread;
+
+		// guarded by this
+		private boolean finished = false;
+
+		// guarded by this
+		private boolean cancelled = false;
+
+		public Stage(Statement statement) {
+			this.statement = statement;
+		}
+
+		public boolean isExternal() {
+			return statement.getCommand() instanceof ExternalCommand;
+		}
+
+		public boolean canPipeTo(Statement next) {
+			return isExternal()
+				&& next.getCommand() instanceof ExternalCommand
+				&& fused.isEmpty();
+		}
+
+		// i.e. 'cat data.bin | take 100 | xxd'
+		public boolean canSendRawBytesTo(Stage next) {
+			return isExternal()
+				&& next.isExternal()
+				&& fused.stream().allMatch(statement -> ((Transformer) statement.getCommand()).isPassThrough());
+		}
+
+		public void collectStats(OutputChannel channel) {
+			String description = statement.getLocation();
+			for (Statement external : piped) {
+				description += " | " + external.getLocation();
+			}
+			for (Statement transformer : fused) {
+				description += " | " + transformer.getLocation();
+			}
+			stats = new StageStats(description, channel);
+		}
+
+		public InputChannel meter(InputChannel in) {
+			return stats == null ? in : stats.meter(in);
+		}
+
+		public OutputChannel meter(OutputChannel out) {
+			return stats == null ? out : stats.meter(out);
+		}
+
+		public void reportStats() {
+			if (stats != null) {
+				stats.report();
+			}
+		}
+
+		public synchronized void started() {
+			thread = Thread.currentThread();
+			if (cancelled) {
+				// consumer already done before this stage started
+				thread.interrupt();
+			}
+		}
+
+		public synchronized void finished() {
+			if (cancelled && thread != null) {
+				Thread.interrupted(); // do not leak the interrupt to the next task of this thread
+			}
+			thread = null;
+			finished = true;
+		}
+
+		public synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		// the consumer is done: wake up this stage as soon as possible,
+		// even when it is blocked in I/O and not sending any record
+		public synchronized void cancel() {
+			if (finished || cancelled) {
+				return;
+			}
+			cancelled = true;
+			if (thread != null) {
+				thread.interrupt();
+			}
+			Command command = statement.getCommand();
+			if (command instanceof ExternalCommand && thread != null) {
+				((ExternalCommand) command).cancel(thread);
+			}
 		}
 	}
 }
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import java.util.function.Supplier;
+
+/**
+ * Various strategies to connect stages of a pipeline.
+ */
+public class Pipes {
+
+	/**
+	 * Variable used to select the channel implementation for pipelines.
+	 * <p>
+	 * Allowed values: "direct", "batching", "ring".
+	 * Default: "direct" when records are sent to an external command, "batching" otherwise.
+	 */
+	public static final String HOSH_PIPELINE_CHANNEL = "HOSH_PIPELINE_CHANNEL";
+
+	/**
+	 * Variable used to disable fusion of adjacent transformers (i.e. 'filter', 'select', 'take')
+	 * in the same stage of a pipeline: useful while debugging.
+	 * <p>
+	 * Allowed values: "true", "false".
+	 * Default: "true".
+	 */
+	public static final String HOSH_PIPELINE_FUSION = "HOSH_PIPELINE_FUSION";
+
+	public static final String DIRECT = "direct";
+
+	public static final String BATCHING = "batching";
+
+	public static final String RING = "ring";
+
+	private Pipes() {
+	}
+
+	public static Supplier<Pipe> byName(String name) {
+		switch (name) {
+			case DIRECT:
+				return PipelineChannel::new;
+			case BATCHING:
+				return BatchingChannel::new;
+			case RING:
+				return RingBufferChannel::new;
+			default:
+				throw new IllegalArgumentException(String.format("unknown pipeline channel: '%s'", name));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.LoggerFactory;
+import hosh.spi.Record;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Bounded, lock-free channel for exactly one producer and one consumer
+ * (i.e. two adjacent stages of a pipeline).
+ * <p>
+ * Records are stored in a preallocated ring: no allocation per record and
+ * a fast producer is blocked as soon as the ring is full (back-pressure).
+ * Both sides spin for a short while before parking.
+ */
+public class RingBufferChannel implements Pipe {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	private static final int SPINS = 128;
+
+	// safety net: both sides re-check the state of the channel at least this often
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Record[] ring;
+
+	private final int mask;
+
+	// next slot to read, written only by the consumer
+	private final AtomicLong head = new AtomicLong();
+
+	// next slot to write, written only by the producer
+	private final AtomicLong tail = new AtomicLong();
+
+	private volatile Thread parkedProducer;
+
+	private volatile Thread parkedConsumer;
+
+	// consumer is done
+	private volatile boolean done;
+
+	// producer is done
+	private volatile boolean closed;
+
+	public RingBufferChannel() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RingBufferChannel(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be >= 1");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size = size << 1;
+		}
+		this.ring = new Record[size];
+		this.mask = size - 1;
+	}
+
+	public int capacity() {
+		return ring.length;
+	}
+
+	@Override
+	public Optional<Record> recv() {
+		long current = head.get();
+		int spins = 0;
+		while (current == tail.get()) {
+			if (closed && current == tail.get()) {
+				LOGGER.finer("producer is done");
+				return Optional.empty();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return Optional.empty();
+			}
+			if (spins < SPINS) {
+				spins++;
+				Thread.onSpinWait();
+			} else {
+				parkedConsumer = Thread.currentThread();
+				if (current == tail.get() && !closed) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				parkedConsumer = null;
+			}
+		}
+		int index = (int) (current & mask);
+		Record record = ring[index];
+		ring[index] = null;
+		head.set(current + 1);
+		LockSupport.unpark(parkedProducer);
+		return Optional.of(record);
+	}
+
+	@Override
+	public void send(Record record) {
+		if (done) {
+			throw new PipelineChannel.ProducerPoisonPill();
+		}
+		long current = tail.get();
+		int spins = 0;
+		while (current - head.get() == ring.length) {
+			if (done) {
+				throw new PipelineChannel.ProducerPoisonPill();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			if (spins < SPINS) {
+				spins++;
+				Thread.onSpinWait();
+			} else {
+				parkedProducer = Thread.currentThread();
+				if (current - head.get() == ring.length && !done) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				parkedProducer = null;
+			}
+		}
+		ring[(int) (current & mask)] = record;
+		tail.set(current + 1);
+		LockSupport.unpark(parkedConsumer);
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public void stopProducer() {
+		LOGGER.fine("producer stop requested");
+		done = true;
+		LockSupport.unpark(parkedProducer);
+	}
+
+	@Override
+	public void stopConsumer() {
+		LOGGER.fine("consumer stop requested");
+		done = true;
+		closed = true;
+		LockSupport.unpark(parkedConsumer);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RingBufferChannel[capacity=%d]", ring.length);
+	}
+}
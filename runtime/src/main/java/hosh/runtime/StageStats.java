@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.InputChannel;
+import hosh.spi.Key;
+import hosh.spi.Keys;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Values;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Counters of a single pipeline stage, collected only inside 'withStats { ... }'.
+ * <p>
+ * Every counter has a single writer: the thread running the stage or, for
+ * the input of an external command, its stdin pump. Counters are read only
+ * once the stage is done, after joining the pumps, so plain fields are enough.
+ */
+class StageStats {
+
+	public static final Key STAGE = Keys.of("stage");
+
+	public static final Key RECORDS_IN = Keys.of("recordsin");
+
+	public static final Key RECORDS_OUT = Keys.of("recordsout");
+
+	public static final Key BYTES_IN = Keys.of("bytesin");
+
+	public static final Key BYTES_OUT = Keys.of("bytesout");
+
+	public static final Key WALL = Keys.of("wall");
+
+	public static final Key SEND_BLOCKED = Keys.of("sendblocked");
+
+	public static final Key RECV_BLOCKED = Keys.of("recvblocked");
+
+	// where pipelines evaluated by the current thread send their stats, if requested
+	private static final ThreadLocal<OutputChannel> CHANNEL = new ThreadLocal<>();
+
+	// stage running in the current thread, if any
+	private static final ThreadLocal<StageStats> CURRENT = new ThreadLocal<>();
+
+	private final String stage;
+
+	private final OutputChannel channel;
+
+	private long recordsIn;
+
+	private long recordsOut;
+
+	private long bytesIn;
+
+	private long bytesOut;
+
+	private boolean external;
+
+	private long wallNanos;
+
+	private long sendBlockedNanos;
+
+	private long recvBlockedNanos;
+
+	public StageStats(String stage, OutputChannel channel) {
+		this.stage = stage;
+		this.channel = channel;
+	}
+
+	public static <T> T collecting(OutputChannel channel, Supplier<T> action) {
+		OutputChannel previous = CHANNEL.get();
+		CHANNEL.set(channel);
+		try {
+			return action.get();
+		} finally {
+			CHANNEL.set(previous);
+		}
+	}
+
+	public static Optional<OutputChannel> channel() {
+		return Optional.ofNullable(CHANNEL.get());
+	}
+
+	public static Optional<StageStats> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	// runs the stage in the current thread, nested pipelines included
+	public <T> T measure(Supplier<T> stage) {
+		StageStats previous = CURRENT.get();
+		CURRENT.set(this);
+		long start = System.nanoTime();
+		try {
+			return collecting(channel, stage);
+		} finally {
+			wallNanos = System.nanoTime() - start;
+			CURRENT.set(previous);
+		}
+	}
+
+	public InputChannel meter(InputChannel in) {
+		return () -> {
+			long start = System.nanoTime();
+			Optional<Record> record = in.recv();
+			recvBlockedNanos += System.nanoTime() - start;
+			if (record.isPresent()) {
+				recordsIn++;
+			}
+			return record;
+		};
+	}
+
+	public OutputChannel meter(OutputChannel out) {
+		return new OutputChannel() {
+
+			@Override
+			public void send(Record record) {
+				long start = System.nanoTime();
+				try {
+					out.send(record);
+					recordsOut++;
+				} finally {
+					sendBlockedNanos += System.nanoTime() - start;
+				}
+			}
+
+			@Override
+			public boolean isDone() {
+				return out.isDone();
+			}
+		};
+	}
+
+	// stdin of an external command
+	public OutputStream meter(OutputStream outputStream) {
+		external = true;
+		return new FilterOutputStream(outputStream) {
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytesIn++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				bytesIn += len;
+			}
+		};
+	}
+
+	// stdout of an external command
+	public InputStream meter(InputStream inputStream) {
+		external = true;
+		return new FilterInputStream(inputStream) {
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					bytesOut++;
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) {
+					bytesOut += n;
+				}
+				return n;
+			}
+		};
+	}
+
+	public void report() {
+		channel.send(toRecord());
+	}
+
+	public Record toRecord() {
+		return Records.builder()
+			       .entry(STAGE, Values.ofText(stage))
+			       .entry(RECORDS_IN, Values.ofNumeric(recordsIn))
+			       .entry(RECORDS_OUT, Values.ofNumeric(recordsOut))
+			       .entry(BYTES_IN, external ? Values.ofSize(bytesIn) : Values.none())
+			       .entry(BYTES_OUT, external ? Values.ofSize(bytesOut) : Values.none())
+			       .entry(WALL, Values.ofDuration(Duration.ofNanos(wallNanos)))
+			       .entry(SEND_BLOCKED, Values.ofDuration(Duration.ofNanos(sendBlockedNanos)))
+			       .entry(RECV_BLOCKED, Values.ofDuration(Duration.ofNanos(recvBlockedNanos)))
+			       .build();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StageStats[stage=%s]", stage);
+	}
+}
@@ -27,14 +27,22 @@ import hosh.spi.ExitStatus;
 import hosh.spi.LoggerFactory;
 import jdk.internal.misc.Signal;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,6 +52,19 @@ import java.util.logging.Logger;
  * while providing a synchronization point via @{see
  * {@link Supervisor#waitForAll()}.
  * <p>
+ * A supervisor is just a group of tasks running in a shared executor:
+ * closing it cancels only its own tasks.
+ * <p>
+ * Tasks are awaited in completion order: an exception or an error of the
+ * consumer (i.e. the last stage of a pipeline) cancels all the others
+ * (i.e. 'rand | sort -x' fails as soon as 'sort' reports the usage error),
+ * then waits for the ones already running to stop, so that nothing is sent
+ * after returning. A task ignoring interrupts (i.e. blocked reading a socket)
+ * is waited at most {@link #DEFAULT_STOP_TIMEOUT}, then it is left behind
+ * to not hang the shell. An error of any other task does not cancel anything,
+ * since its consumer could still be handling what has been produced so far
+ * (i.e. 'cat missing existing | sort').
+ * <p>
  * SIGINT is handled as well, if requested.
  */
 public class Supervisor implements AutoCloseable {
@@ -52,32 +73,70 @@ public class Supervisor implements AutoCloseable {
 
 	private static final Signal INT = new Signal("INT");
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	public static final Duration DEFAULT_STOP_TIMEOUT = Duration.ofSeconds(1);
+
+	private final ExecutorService executor;
+
+	// futures are queued as soon as they are done, cancelled ones included
+	// (i.e. ExecutorCompletionService waits for them to stop running instead)
+	private final BlockingQueue<Future<ExitStatus>> completed = new LinkedBlockingQueue<>();
 
 	private final List<Future<ExitStatus>> futures = new ArrayList<>();
 
+	private final List<Task> tasks = new ArrayList<>();
+
+	// tasks failing fast on errors, see submitConsumer()
+	private final Set<Future<ExitStatus>> consumers = new HashSet<>();
+
 	private boolean handleSignals = true;
 
+	private Duration stopTimeout = DEFAULT_STOP_TIMEOUT;
+
+	public Supervisor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	public void setHandleSignals(boolean handleSignals) {
 		this.handleSignals = handleSignals;
 	}
 
+	void setStopTimeout(Duration stopTimeout) {
+		this.stopTimeout = stopTimeout;
+	}
+
 	@Override
 	public void close() {
-		executor.shutdownNow();
+		cancelFutures();
 	}
 
 	public void submit(Callable<ExitStatus> task) {
-		Future<ExitStatus> future = executor.submit(task);
+		add(task);
+	}
+
+	// once the consumer fails, the output of all other tasks is not needed anymore
+	public void submitConsumer(Callable<ExitStatus> task) {
+		consumers.add(add(task));
+	}
+
+	private Future<ExitStatus> add(Callable<ExitStatus> callable) {
+		Task task = new Task(callable);
+		FutureTask<ExitStatus> future = new FutureTask<>(task) {
+			@Override
+			protected void done() {
+				completed.add(this);
+			}
+		};
+		executor.execute(future);
 		LOGGER.finer(() -> String.format("adding future %s", future));
 		futures.add(future);
+		tasks.add(task);
+		return future;
 	}
 
 	public ExitStatus waitForAll() throws ExecutionException {
 		cancelFuturesOnSigint();
 		try {
-			List<ExitStatus> results = waitForCompletion();
-			return deriveExitStatus(results);
+			return waitForCompletion();
 		} catch (CancellationException e) {
 			LOGGER.log(Level.INFO, "got cancellation", e);
 			return ExitStatus.error();
@@ -90,20 +149,47 @@ public class Supervisor implements AutoCloseable {
 		}
 	}
 
-	private ExitStatus deriveExitStatus(List<ExitStatus> results) {
-		return results
-			.stream()
-			.filter(ExitStatus::isError)
-			.findFirst()
-			.orElse(ExitStatus.success());
+	private ExitStatus waitForCompletion() throws InterruptedException, ExecutionException {
+		Set<Future<ExitStatus>> failed = new HashSet<>();
+		for (int i = 0; i < futures.size(); i++) {
+			Future<ExitStatus> future = completed.take();
+			ExitStatus exitStatus;
+			try {
+				exitStatus = future.get();
+			} catch (ExecutionException e) {
+				cancelAndAwaitTasks();
+				throw e;
+			} catch (CancellationException e) {
+				cancelFutures(); // i.e. SIGINT: tasks not responding to interrupts must not hang the shell
+				throw e;
+			}
+			if (exitStatus.isError() && consumers.contains(future)) {
+				LOGGER.fine("got error from consumer, cancelling remaining tasks");
+				cancelAndAwaitTasks();
+				return exitStatus;
+			}
+			if (exitStatus.isError()) {
+				failed.add(future);
+			}
+		}
+		// first error in submission order (i.e. the one of the producer)
+		for (Future<ExitStatus> future : futures) {
+			if (failed.contains(future)) {
+				return future.get();
+			}
+		}
+		return ExitStatus.success();
 	}
 
-	private List<ExitStatus> waitForCompletion() throws InterruptedException, ExecutionException {
-		List<ExitStatus> results = new ArrayList<>();
-		for (Future<ExitStatus> future : futures) {
-			results.add(future.get());
+	private void cancelAndAwaitTasks() throws InterruptedException {
+		cancelFutures();
+		long deadline = System.nanoTime() + stopTimeout.toNanos();
+		for (Task task : tasks) {
+			if (!task.awaitStopped(deadline - System.nanoTime())) {
+				LOGGER.warning(() -> String.format("task not stopped after %s, leaving it behind", stopTimeout));
+				return;
+			}
 		}
-		return results;
 	}
 
 	private void restoreDefaultSigintHandler() {
@@ -122,10 +208,52 @@ public class Supervisor implements AutoCloseable {
 
 	private void cancelFutures(Signal signal) {
 		LOGGER.info(() -> String.format("got %s signal", signal));
+		cancelFutures();
+	}
+
+	private void cancelFutures() {
 		for (Future<ExitStatus> future : futures) {
 			LOGGER.finer(() -> String.format("cancelling future %s", future));
 			future.cancel(true);
 		}
 	}
 
+	// a task cancelled before starting never runs, otherwise it can be awaited until it stops
+	private static class Task implements Callable<ExitStatus> {
+
+		private static final int NEW = 0;
+
+		private static final int RUNNING = 1;
+
+		private static final int SKIPPED = 2;
+
+		private final Callable<ExitStatus> callable;
+
+		private final AtomicInteger state = new AtomicInteger(NEW);
+
+		private final CountDownLatch stopped = new CountDownLatch(1);
+
+		public Task(Callable<ExitStatus> callable) {
+			this.callable = callable;
+		}
+
+		@Override
+		public ExitStatus call() throws Exception {
+			if (!state.compareAndSet(NEW, RUNNING)) {
+				return ExitStatus.error();
+			}
+			try {
+				return callable.call();
+			} finally {
+				stopped.countDown();
+			}
+		}
+
+		public boolean awaitStopped(long timeoutNanos) throws InterruptedException {
+			if (state.compareAndSet(NEW, SKIPPED)) {
+				return true;
+			}
+			return stopped.await(timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+	}
 }
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.LoggerFactory;
+import hosh.spi.State;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Various strategies to run statements and stages of a pipeline.
+ */
+public class ThreadModes {
+
+	/**
+	 * Variable used to select the kind of threads used by {@link Supervisor}.
+	 * <p>
+	 * Allowed values: "platform", "virtual".
+	 * Default: "platform" (unknown values as well, the shell must start anyway).
+	 */
+	public static final String HOSH_THREADS = "HOSH_THREADS";
+
+	public static final String PLATFORM = "platform";
+
+	// requires a JDK with virtual threads, otherwise falls back to platform threads
+	public static final String VIRTUAL = "virtual";
+
+	private static final Logger LOGGER = LoggerFactory.forEnclosingClass();
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupVirtualThreadPerTaskExecutor();
+
+	private ThreadModes() {
+	}
+
+	public static Supplier<ExecutorService> byName(String name) {
+		switch (name) {
+			case PLATFORM:
+				return ThreadModes::newCachedThreadPool;
+			case VIRTUAL:
+				return ThreadModes::newVirtualThreadPerTaskExecutor;
+			default:
+				throw new IllegalArgumentException(String.format("unknown thread mode: '%s'", name));
+		}
+	}
+
+	public static ExecutorService newExecutor(State state) {
+		String requested = state.getVariables().getOrDefault(HOSH_THREADS, PLATFORM);
+		try {
+			return byName(requested).get();
+		} catch (IllegalArgumentException e) {
+			LOGGER.log(Level.WARNING, String.format("ignoring %s, using platform threads", HOSH_THREADS), e);
+			return newCachedThreadPool();
+		}
+	}
+
+	public static boolean isVirtualThreadsSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isVirtualThreadsSupported()) {
+			return newCachedThreadPool();
+		}
+		try {
+			return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			// e.g. JDK 19 or 20 without --enable-preview
+			LOGGER.log(Level.FINE, "virtual threads not available, using platform threads", e);
+			return newCachedThreadPool();
+		}
+	}
+
+	// idle threads are kept around for a while: they must not prevent the JVM from exiting
+	private static ExecutorService newCachedThreadPool() {
+		AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "hosh-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// virtual threads are available since JDK 21 but the project targets JDK 11
+	private static Method lookupVirtualThreadPerTaskExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			LOGGER.fine("virtual threads not supported by this runtime");
+			return null;
+		}
+	}
+}
@@ -25,6 +25,7 @@ module hosh.runtime {
 	requires hosh.spi;
 
 	requires java.logging;
+	requires jdk.jfr;
 
 	requires org.jline.reader;
 	requires org.jline.terminal;
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.Keys;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Values;
+import hosh.test.support.WithExecutor;
+import hosh.test.support.WithThread;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchingChannelTest {
+
+	@RegisterExtension
+	final WithThread withThread = new WithThread();
+
+	@RegisterExtension
+	final WithExecutor withExecutor = new WithExecutor(Executors.newFixedThreadPool(2));
+
+	@Test
+	void stopConsumerFlushesPendingRecords() throws ExecutionException, InterruptedException {
+		BatchingChannel sut = new BatchingChannel(10, Duration.ofSeconds(10));
+		Future<?> send = withExecutor.submit(() -> {
+			sut.send(record(1));
+			sut.send(record(2));
+			sut.stopConsumer();
+		});
+		send.get();
+		assertThat(sut.recv()).contains(record(1));
+		assertThat(sut.recv()).contains(record(2));
+		assertThat(sut.recv()).isEmpty();
+	}
+
+	@Test
+	void preserveOrderAcrossBatches() throws ExecutionException, InterruptedException {
+		BatchingChannel sut = new BatchingChannel(7, Duration.ofMillis(1));
+		Future<?> send = withExecutor.submit(() -> {
+			for (int i = 0; i < 1_000; i++) {
+				sut.send(record(i));
+			}
+			sut.stopConsumer();
+		});
+		List<Record> received = new ArrayList<>();
+		Optional<Record> next;
+		while ((next = sut.recv()).isPresent()) {
+			received.add(next.get());
+		}
+		send.get();
+		assertThat(received)
+			.hasSize(1_000)
+			.startsWith(record(0), record(1))
+			.endsWith(record(998), record(999));
+	}
+
+	@Test
+	void partialBatchIsDeliveredWithinMaxLatency() throws ExecutionException, InterruptedException {
+		BatchingChannel sut = new BatchingChannel(1_000, Duration.ofMillis(5));
+		Future<?> recv = withExecutor.submit(() -> assertThat(sut.recv()).contains(record(1)));
+		sut.send(record(1)); // no stopConsumer(): the consumer must not wait for a full batch
+		recv.get();
+	}
+
+	@Test
+	void stopProducer() {
+		BatchingChannel sut = new BatchingChannel();
+		assertThat(sut.isDone()).isFalse();
+		sut.stopProducer();
+		assertThat(sut.isDone()).isTrue();
+		Record record = record(1);
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(ProducerPoisonPill.class);
+	}
+
+	@Test
+	void invalidBatchSize() {
+		Duration latency = Duration.ofMillis(1);
+		assertThatThrownBy(() -> new BatchingChannel(0, latency))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("batch size must be >= 1");
+	}
+
+	@Test
+	void recvInterrupted() {
+		BatchingChannel sut = new BatchingChannel();
+		withThread.interrupt();
+		Optional<Record> recv = sut.recv();
+		assertThat(recv).isEmpty();
+		assertThat(withThread.isInterrupted()).isTrue();
+	}
+
+	private Record record(int i) {
+		return Records.singleton(Keys.INDEX, Values.ofNumeric(i));
+	}
+}
@@ -41,6 +41,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
@@ -63,6 +65,9 @@ class CommandCompleterTest {
 	@Mock(stubOnly = true)
 	ParsedLine line;
 
+	@Mock(stubOnly = true)
+	ExecutableIndex index;
+
 	@InjectMocks
 	CommandCompleter sut;
 
@@ -103,6 +108,20 @@ class CommandCompleterTest {
 			});
 	}
 
+	@Test
+	void pathIndexed() {
+		given(state.getPath()).willReturn(List.of(temporaryFolder.toPath()));
+		given(index.executables(temporaryFolder.toPath())).willReturn(Optional.of(Set.of("cmd")));
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates)
+			.hasSize(1)
+			.allSatisfy(candidate -> {
+				assertThat(candidate.value()).isEqualTo("cmd");
+				assertThat(candidate.descr()).isEqualTo("external in " + temporaryFolder.toPath());
+			});
+	}
+
 	@Test
 	void pathWithEmptyDir() {
 		given(state.getPath()).willReturn(List.of(temporaryFolder.toPath()));
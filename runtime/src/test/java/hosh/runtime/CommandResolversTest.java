@@ -40,11 +40,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
@@ -64,6 +68,9 @@ class CommandResolversTest {
 		@Mock(stubOnly = true)
 		State state;
 
+		@Mock(stubOnly = true)
+		ExecutableIndex index;
+
 		CommandResolver sut;
 
 		@BeforeEach
@@ -168,6 +175,51 @@ class CommandResolversTest {
 			assertThat(result).isPresent();
 		}
 
+		@Test
+		void foundInIndex() {
+			Path dir = folder.toPath().toAbsolutePath();
+			given(index.executables(dir)).willReturn(Optional.of(Set.of("test")));
+			given(state.getCommands()).willReturn(Collections.emptyMap());
+			given(state.getPath()).willReturn(List.of(dir));
+			Optional<Command> result = CommandResolvers.builtinsThenExternal(state, index).tryResolve("test");
+			assertThat(result).hasValueSatisfying(resolved -> assertThat(resolved).isInstanceOf(ExternalCommand.class));
+		}
+
+		@Test
+		void notFoundInIndex() throws IOException {
+			assertThat(folder.newFile("test").setExecutable(true)).isTrue();
+			Path dir = folder.toPath().toAbsolutePath();
+			given(index.executables(dir)).willReturn(Optional.of(Set.of()));
+			given(state.getCommands()).willReturn(Collections.emptyMap());
+			given(state.getPath()).willReturn(List.of(dir));
+			given(state.getCwd()).willReturn(Paths.get("."));
+			Optional<Command> result = CommandResolvers.builtinsThenExternal(state, index).tryResolve("test");
+			assertThat(result).isEmpty();
+		}
+
+		@Test
+		void notYetIndexed() throws IOException {
+			assertThat(folder.newFile("test").setExecutable(true)).isTrue();
+			Path dir = folder.toPath().toAbsolutePath();
+			given(index.executables(dir)).willReturn(Optional.empty());
+			given(state.getCommands()).willReturn(Collections.emptyMap());
+			given(state.getPath()).willReturn(List.of(dir));
+			Optional<Command> result = CommandResolvers.builtinsThenExternal(state, index).tryResolve("test");
+			assertThat(result).isPresent();
+		}
+
+		@Test
+		void builtinRegisteredAfterLookup() throws IOException {
+			assertThat(folder.newFile("test").setExecutable(true)).isTrue();
+			Map<String, Supplier<Command>> commands = new HashMap<>();
+			given(state.getCommands()).willReturn(commands);
+			given(state.getPath()).willReturn(List.of(folder.toPath().toAbsolutePath()));
+			given(state.getCwd()).willReturn(Paths.get("."));
+			assertThat(sut.tryResolve("test")).hasValueSatisfying(resolved -> assertThat(resolved).isInstanceOf(ExternalCommand.class));
+			commands.put("test", () -> command);
+			assertThat(sut.tryResolve("test")).hasValue(command);
+		}
+
 		@Test
 		void notFoundInPath() {
 			given(state.getCommands()).willReturn(Collections.emptyMap());
@@ -85,6 +85,15 @@ class CompilerTest {
 			.hasMessage("line 1: unnecessary closing '}'");
 	}
 
+	@Test
+	void sameInputCompiledTwiceResolvesCommandsAgain() {
+		doReturn(Optional.of(command), Optional.of(anotherCommand)).when(commandResolver).tryResolve("ls");
+		Program first = sut.compile("ls /home");
+		Program second = sut.compile("ls /home");
+		assertThat(first.getStatements()).first().satisfies(statement -> assertThat(statement.getCommand()).isSameAs(command));
+		assertThat(second.getStatements()).first().satisfies(statement -> assertThat(statement.getCommand()).isSameAs(anotherCommand));
+	}
+
 	@Test
 	void pipelineOfCommandsWithoutArguments() {
 		doReturn(Optional.of(command)).when(commandResolver).tryResolve("ls");
@@ -220,6 +229,20 @@ class CompilerTest {
 			.first().satisfies(statement -> assertThat(statement.getCommand()).isInstanceOf(DefaultCommandDecorator.class));
 	}
 
+	@Test
+	void wrappedLambda() {
+		doReturn(Optional.of(commandWrapper)).when(commandResolver).tryResolve("parallel");
+		doReturn(Optional.of(command)).when(commandResolver).tryResolve("echo");
+		Program program = sut.compile("parallel 4 { path -> echo ${path} }");
+		assertThat(program.getStatements())
+			.hasSize(1)
+			.first().satisfies(statement -> {
+			assertThat(statement.getLocation()).isEqualTo("parallel");
+			assertThat(statement.getArguments()).hasSize(1);
+			assertThat(statement.getCommand()).isInstanceOf(DefaultCommandDecorator.class);
+		});
+	}
+
 	@Test
 	void commandWrapperUsedAsCommand() {
 		doReturn(Optional.of(commandWrapper)).when(commandResolver).tryResolve("withTime");
@@ -485,6 +508,34 @@ class CompilerTest {
 				});
 			});
 		}
+
+		@Test
+		void constantArgumentsAreFolded() {
+			doReturn(Optional.of(command)).when(commandResolver).tryResolve("vim");
+			Program program = sut.compile("vim -o 'file with spaces' \"another file\"");
+			assertThat(program.getStatements())
+				.hasSize(1)
+				.first().satisfies(statement -> {
+				assertThat(statement.getArguments()).allSatisfy(argument -> assertThat(argument).isInstanceOf(Compiler.Constant.class));
+				assertThat(statement.getConstantArguments()).hasValue(List.of("-o", "file with spaces", "another file"));
+			});
+		}
+
+		@Test
+		void variableArgumentsAreNotFolded() {
+			doReturn(Optional.of(command)).when(commandResolver).tryResolve("ls");
+			doReturn(Map.of("HOME", "/home/dfa")).when(state).getVariables();
+			Program program = sut.compile("ls -l \"${HOME}/bin\"");
+			assertThat(program.getStatements())
+				.hasSize(1)
+				.first().satisfies(statement -> {
+				assertThat(statement.getConstantArguments()).isEmpty();
+				assertThat(statement.getArguments()).hasSize(2).last().satisfies(argument -> {
+					assertThat(argument).isInstanceOf(Compiler.Composite.class);
+					assertThat(argument.resolve(state)).isEqualTo("/home/dfa/bin");
+				});
+			});
+		}
 	}
 
 }
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.Compiler.Statement;
+import hosh.spi.ExitStatus;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.State;
+import hosh.test.support.TemporaryFolder;
+import hosh.test.support.WithExecutor;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class EventsTest {
+
+	@RegisterExtension
+	final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@RegisterExtension
+	final WithExecutor withExecutor = new WithExecutor(Executors.newSingleThreadExecutor());
+
+	@Mock
+	Injector injector;
+
+	@Mock
+	OutputChannel out;
+
+	@Mock
+	OutputChannel err;
+
+	@Mock(stubOnly = true)
+	Record record;
+
+	@Test
+	void statement() throws Exception {
+		Interpreter interpreter = new Interpreter(new State(), injector);
+		Statement statement = new Statement((args, in, out, err) -> ExitStatus.of(42), List.of(), "cmd");
+		List<RecordedEvent> events = record(() -> interpreter.eval(statement, new NullChannel(), out, err));
+		assertThat(events)
+			.filteredOn(event -> event.getEventType().getName().equals("hosh.Statement"))
+			.singleElement()
+			.satisfies(event -> {
+				assertThat(event.getString("location")).isEqualTo("cmd");
+				assertThat(event.getInt("exitStatus")).isEqualTo(42);
+			});
+	}
+
+	@Test
+	void channelWait() throws Exception {
+		PipelineChannel channel = new PipelineChannel();
+		List<RecordedEvent> events = record(() -> {
+			Future<?> producer = withExecutor.submit(() -> {
+				sleep();
+				channel.send(record);
+			});
+			channel.recv();
+			producer.get();
+		});
+		assertThat(events)
+			.filteredOn(event -> event.getEventType().getName().equals("hosh.ChannelWait"))
+			.anySatisfy(event -> assertThat(event.getString("operation")).isEqualTo("recv"));
+	}
+
+	private List<RecordedEvent> record(ThrowingRunnable action) throws Exception {
+		Path file = temporaryFolder.toPath().resolve("events.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(Events.StatementEvent.class);
+			recording.enable(Events.ChannelWaitEvent.class);
+			recording.start();
+			action.run();
+			recording.stop();
+			recording.dump(file);
+		}
+		return readAllEvents(file);
+	}
+
+	private void sleep() {
+		try {
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<RecordedEvent> readAllEvents(Path file) throws IOException {
+		return RecordingFile.readAllEvents(file);
+	}
+
+	private interface ThrowingRunnable {
+
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.test.support.TemporaryFolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExecutableIndexTest {
+
+	@RegisterExtension
+	final TemporaryFolder folder = new TemporaryFolder();
+
+	final List<Runnable> tasks = new ArrayList<>();
+
+	ExecutableIndex sut = new ExecutableIndex(Runnable::run);
+
+	@AfterEach
+	void tearDown() {
+		sut.close();
+	}
+
+	@DisabledOnOs(OS.WINDOWS)
+	@Test
+	void onlyExecutableFiles() throws IOException {
+		assertThat(folder.newFile("executable").setExecutable(true)).isTrue();
+		assertThat(folder.newFile("file").setExecutable(false)).isTrue();
+		folder.newFolder("dir");
+		Optional<Set<String>> result = sut.executables(folder.toPath());
+		assertThat(result).hasValue(Set.of("executable"));
+	}
+
+	@Test
+	void missingDirectory() {
+		Optional<Set<String>> result = sut.executables(folder.toPath().resolve("missing"));
+		assertThat(result).hasValue(Set.of());
+	}
+
+	@Test
+	void indexedInBackground() throws IOException {
+		sut = new ExecutableIndex(tasks::add);
+		assertThat(folder.newFile("executable").setExecutable(true)).isTrue();
+		assertThat(sut.executables(folder.toPath())).isEmpty();
+		assertThat(sut.executables(folder.toPath())).isEmpty();
+		assertThat(tasks).hasSize(1); // already scheduled
+		tasks.get(0).run();
+		assertThat(sut.executables(folder.toPath())).hasValue(Set.of("executable"));
+	}
+
+	@Test
+	void indexedAgainAfterUnexpectedException() throws IOException {
+		List<RuntimeException> failures = new ArrayList<>();
+		sut = new ExecutableIndex(task -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				failures.add(e); // like a thread pool
+			}
+		});
+		Path zip = folder.toPath().resolve("test.zip");
+		try (FileSystem fileSystem = FileSystems.newFileSystem(URI.create("jar:" + zip.toUri()), Map.of("create", "true"))) {
+			Path dir = fileSystem.getPath("/");
+			sut.executables(dir); // cannot be watched
+			sut.executables(dir);
+		}
+		assertThat(failures)
+			.hasSize(2)
+			.allMatch(ProviderMismatchException.class::isInstance);
+	}
+
+	@Test
+	void newExecutable() throws IOException, InterruptedException {
+		Path dir = folder.toPath();
+		assertThat(sut.executables(dir)).hasValue(Set.of());
+		File file = folder.newFile("executable");
+		assertThat(file.setExecutable(true)).isTrue();
+		assertThat(awaitExecutables(dir, executables -> executables.contains("executable"))).isTrue();
+	}
+
+	@Test
+	void removedExecutable() throws IOException, InterruptedException {
+		Path dir = folder.toPath();
+		File file = folder.newFile("executable");
+		assertThat(file.setExecutable(true)).isTrue();
+		assertThat(sut.executables(dir)).hasValue(Set.of("executable"));
+		assertThat(file.delete()).isTrue();
+		assertThat(awaitExecutables(dir, Set::isEmpty)).isTrue();
+	}
+
+	private boolean awaitExecutables(Path dir, Predicate<Set<String>> condition) throws InterruptedException {
+		for (int i = 0; i < 200; i++) {
+			if (sut.executables(dir).filter(condition).isPresent()) {
+				return true;
+			}
+			Thread.sleep(50);
+		}
+		return false;
+	}
+}
@@ -33,6 +33,7 @@ import hosh.spi.Records;
 import hosh.spi.State;
 import hosh.spi.Values;
 import hosh.test.support.TemporaryFolder;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -51,11 +52,22 @@ import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.atMostOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static hosh.spi.test.support.ExitStatusAssert.assertThat;
 
@@ -83,6 +95,11 @@ class ExternalCommandTest {
 	@Mock
 	ProcessFactory processFactory;
 
+	@Mock(stubOnly = true, lenient = true)
+	Interpreter interpreter;
+
+	final ExecutorService executor = Executors.newCachedThreadPool();
+
 	Path executable;
 
 	ExternalCommand sut;
@@ -93,6 +110,13 @@ class ExternalCommandTest {
 		sut = new ExternalCommand(executable);
 		sut.setProcessFactory(processFactory);
 		sut.setState(state);
+		sut.setInterpreter(interpreter);
+		given(interpreter.getExecutor()).willReturn(executor);
+	}
+
+	@AfterEach
+	void cleanup() {
+		executor.shutdownNow();
 	}
 
 	@Test
@@ -103,7 +127,7 @@ class ExternalCommandTest {
 		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.emptyList(), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		then(processFactory).should().create(
@@ -124,7 +148,7 @@ class ExternalCommandTest {
 		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		then(processFactory).should().create(
@@ -145,7 +169,7 @@ class ExternalCommandTest {
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isError();
 		then(processFactory).should().create(
@@ -166,7 +190,7 @@ class ExternalCommandTest {
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isError();
 		then(processFactory).should().create(
@@ -174,7 +198,7 @@ class ExternalCommandTest {
 			Paths.get("."),
 			Collections.emptyMap(),
 			Position.SOLE);
-		then(in).should(times(1)).recv();
+		then(in).should(atMostOnce()).recv(); // the thread writing to stdin could be cancelled before starting
 		then(out).shouldHaveNoInteractions();
 		then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("interrupted")));
 	}
@@ -187,7 +211,7 @@ class ExternalCommandTest {
 		given(process.getInputStream()).willReturn(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)));
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		then(in).should(times(1)).recv();
@@ -203,7 +227,7 @@ class ExternalCommandTest {
 		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
 		given(process.getErrorStream()).willReturn(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)));
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		then(in).should(times(1)).recv();
@@ -220,11 +244,12 @@ class ExternalCommandTest {
 			Optional.empty());
 		given(processFactory.create(any(), any(), any(), any())).willReturn(process);
 		given(process.waitFor()).willReturn(0);
+		given(process.isAlive()).willReturn(true);
 		given(process.getOutputStream()).willReturn(value);
 		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
 		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		assertThat(value.toString(StandardCharsets.UTF_8)).isEqualToNormalizingNewlines("aaa 10\n");
@@ -233,15 +258,230 @@ class ExternalCommandTest {
 		then(err).shouldHaveNoInteractions();
 	}
 
+	@Test
+	void stopReadingFromInWhenProcessExits() throws Exception {
+		given(in.recv()).willReturn(Optional.of(Records.singleton(Keys.TEXT, Values.ofText("y"))));
+		given(processFactory.create(any(), any(), any(), any())).willReturn(process);
+		given(process.isAlive()).willReturn(true, false);
+		given(process.waitFor()).willReturn(0);
+		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(in).should(times(2)).recv();
+	}
+
 	@Test
 	void throwsIoException() throws Exception {
 		given(processFactory.create(any(), any(), any(), any())).willThrow(new IOException("simulated error"));
 		given(state.getCwd()).willReturn(Paths.get("."));
-		given(state.getVariables()).willReturn(Collections.emptyMap());
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
 		ExitStatus exitStatus = sut.run(Collections.singletonList("file.hosh"), in, out, err);
 		assertThat(exitStatus).isError();
 		then(in).shouldHaveNoInteractions();
 		then(out).shouldHaveNoInteractions();
 		then(err).should().send(Records.singleton(Keys.ERROR, Values.ofText("simulated error")));
 	}
+
+	@Test
+	void cancelDestroysRunningProcess() throws Exception {
+		Process running = mock(Process.class);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch destroyed = new CountDownLatch(1);
+		AtomicReference<Thread> runner = new AtomicReference<>();
+		given(processFactory.create(any(), any(), any(), any())).willReturn(running);
+		given(running.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(running.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(running.getErrorStream()).willReturn(InputStream.nullInputStream());
+		willAnswer(invocation -> {
+			runner.set(Thread.currentThread());
+			started.countDown();
+			destroyed.await();
+			return 143;
+		}).given(running).waitFor();
+		willAnswer(invocation -> {
+			destroyed.countDown();
+			return null;
+		}).given(running).destroy();
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			Future<ExitStatus> result = caller.submit(() -> sut.run(List.of(), in, out, err));
+			started.await();
+			sut.cancel(runner.get());
+			assertThat(result.get(5, TimeUnit.SECONDS)).isSuccess();
+			then(running).should(atLeastOnce()).destroy();
+			then(err).shouldHaveNoInteractions();
+		} finally {
+			caller.shutdownNow();
+		}
+	}
+
+	@Test
+	void cancelDoesNotDestroyProcessesOfOtherThreads() throws Exception {
+		Process running = mock(Process.class);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch destroyed = new CountDownLatch(1);
+		AtomicReference<Thread> runner = new AtomicReference<>();
+		given(processFactory.create(any(), any(), any(), any())).willReturn(running);
+		given(running.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(running.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(running.getErrorStream()).willReturn(InputStream.nullInputStream());
+		willAnswer(invocation -> {
+			runner.set(Thread.currentThread());
+			started.countDown();
+			destroyed.await();
+			return 143;
+		}).given(running).waitFor();
+		willAnswer(invocation -> {
+			destroyed.countDown();
+			return null;
+		}).given(running).destroy();
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			Future<ExitStatus> result = caller.submit(() -> sut.run(List.of(), in, out, err));
+			started.await();
+			sut.cancel(Thread.currentThread());
+			then(running).should(never()).destroy();
+			sut.cancel(runner.get());
+			assertThat(result.get(5, TimeUnit.SECONDS)).isSuccess();
+			then(err).shouldHaveNoInteractions();
+		} finally {
+			caller.shutdownNow();
+		}
+	}
+
+	@Test
+	void pipedProcesses() throws Exception {
+		Process next = mock(Process.class);
+		given(processFactory.createPipeline(any(), any(), any(), any())).willReturn(List.of(process, next));
+		given(process.waitFor()).willReturn(0);
+		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(next.waitFor()).willReturn(0);
+		given(next.getInputStream()).willReturn(new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8)));
+		given(next.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeline(Position.FIRST);
+		sut.pipeTo(List.of(List.of("/usr/bin/wc", "-l")));
+		ExitStatus exitStatus = sut.run(List.of("file.hosh"), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(processFactory).should().createPipeline(
+			List.of(List.of(executable.toString(), "file.hosh"), List.of("/usr/bin/wc", "-l")),
+			Paths.get("."),
+			Collections.emptyMap(),
+			Position.FIRST);
+		then(in).should().recv();
+		then(out).should().send(Records.singleton(Keys.TEXT, Values.ofText("test")));
+		then(err).shouldHaveNoInteractions();
+	}
+
+	@Test
+	void pipedProcessesFirstErrorWins() throws Exception {
+		Process next = mock(Process.class);
+		given(processFactory.createPipeline(any(), any(), any(), any())).willReturn(List.of(process, next));
+		given(process.waitFor()).willReturn(2);
+		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(next.waitFor()).willReturn(1);
+		given(next.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(next.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeTo(List.of(List.of("/usr/bin/wc", "-l")));
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).hasExitCode(2);
+	}
+
+	@Test
+	void pipedProcessKilledBySigpipe() throws Exception {
+		// i.e. 'yes | head -n 1'
+		Process next = mock(Process.class);
+		given(processFactory.createPipeline(any(), any(), any(), any())).willReturn(List.of(process, next));
+		given(process.waitFor()).willReturn(141);
+		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(next.waitFor()).willReturn(0);
+		given(next.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(next.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeTo(List.of(List.of("/usr/bin/head", "-n", "1")));
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void pipedProcessStillRunningAfterLastOne() throws Exception {
+		// i.e. 'yes | head -n 1' when 'yes' did not get SIGPIPE yet
+		Process first = mock(Process.class);
+		Process next = mock(Process.class);
+		given(processFactory.createPipeline(any(), any(), any(), any())).willReturn(List.of(first, next));
+		given(first.isAlive()).willReturn(true);
+		given(first.waitFor()).willReturn(143);
+		given(first.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(first.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(next.waitFor()).willReturn(0);
+		given(next.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(next.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeTo(List.of(List.of("/usr/bin/head", "-n", "1")));
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(first).should(atLeastOnce()).destroy();
+	}
+
+	@Test
+	void processSendRawBytesToOut() throws Exception {
+		given(processFactory.create(any(), any(), any(), any())).willReturn(process);
+		given(process.waitFor()).willReturn(0);
+		given(process.getOutputStream()).willReturn(OutputStream.nullOutputStream());
+		given(process.getInputStream()).willReturn(new ByteArrayInputStream(new byte[]{'a', '\n', (byte) 0xff}));
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeline(Position.FIRST);
+		sut.sendRawBytes(true);
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(out).should().send(Records.singleton(ExternalCommand.BYTES, Values.ofBytes(new byte[]{'a', '\n'})));
+		then(out).should().send(Records.singleton(ExternalCommand.BYTES, Values.ofBytes(new byte[]{(byte) 0xff})));
+		then(err).shouldHaveNoInteractions();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void processRawBytesFromIn() throws Exception {
+		ByteArrayOutputStream value = new ByteArrayOutputStream();
+		given(in.recv()).willReturn(
+			Optional.of(Records.singleton(ExternalCommand.BYTES, Values.ofBytes(new byte[]{(byte) 0xff, '\n'}))),
+			Optional.of(Records.singleton(Keys.TEXT, Values.ofText("text"))),
+			Optional.of(Records.singleton(ExternalCommand.BYTES, Values.ofBytes(new byte[]{(byte) 0xfe}))),
+			Optional.empty());
+		given(processFactory.create(any(), any(), any(), any())).willReturn(process);
+		given(process.waitFor()).willReturn(0);
+		given(process.isAlive()).willReturn(true);
+		given(process.getOutputStream()).willReturn(value);
+		given(process.getInputStream()).willReturn(InputStream.nullInputStream());
+		given(process.getErrorStream()).willReturn(InputStream.nullInputStream());
+		given(state.getCwd()).willReturn(Paths.get("."));
+		given(state.getVariablesSnapshot()).willReturn(Collections.emptyMap());
+		sut.pipeline(Position.LAST);
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		byte[] text = ("text" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(new byte[]{(byte) 0xff, '\n'});
+		expected.write(text);
+		expected.write(new byte[]{(byte) 0xfe});
+		assertThat(value.toByteArray()).isEqualTo(expected.toByteArray());
+	}
 }
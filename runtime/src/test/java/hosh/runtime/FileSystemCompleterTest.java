@@ -28,22 +28,27 @@ import hosh.test.support.TemporaryFolder;
 import org.jline.reader.Candidate;
 import org.jline.reader.LineReader;
 import org.jline.reader.ParsedLine;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.EnabledOnOs;
 import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.extension.RegisterExtension;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.BDDMockito.given;
 
 @ExtendWith(MockitoExtension.class)
@@ -61,9 +66,18 @@ class FileSystemCompleterTest {
 	@Mock(stubOnly = true)
 	ParsedLine line;
 
-	@InjectMocks
+	final List<Runnable> tasks = new ArrayList<>();
+
 	FileSystemCompleter sut;
 
+	@BeforeEach
+	void setUp() {
+		sut = new FileSystemCompleter(state, task -> {
+			tasks.add(task);
+			task.run();
+		});
+	}
+
 	@Test
 	void emptyWordInEmptyDir() {
 		given(state.getCwd()).willReturn(temporaryFolder.toPath());
@@ -165,4 +179,94 @@ class FileSystemCompleterTest {
 				assertThat(candidate.complete()).isFalse();
 			});
 	}
+
+	@Test
+	void repeatedCompletionServedFromMemory() throws IOException {
+		File file = temporaryFolder.newFile("a");
+		given(state.getCwd()).willReturn(temporaryFolder.toPath());
+		given(line.word()).willReturn("");
+		sut.complete(lineReader, line, new ArrayList<>());
+		FileTime lastModified = Files.getLastModifiedTime(temporaryFolder.toPath());
+		assertThat(file.delete()).isTrue();
+		Files.setLastModifiedTime(temporaryFolder.toPath(), lastModified); // change not detected
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(1);
+	}
+
+	@Test
+	void changedDirectoryIsListedAgain() throws IOException {
+		temporaryFolder.newFile("a");
+		given(state.getCwd()).willReturn(temporaryFolder.toPath());
+		given(line.word()).willReturn("");
+		sut.complete(lineReader, line, new ArrayList<>());
+		temporaryFolder.newFile("b");
+		Files.setLastModifiedTime(temporaryFolder.toPath(), FileTime.fromMillis(0));
+		sut.complete(lineReader, line, new ArrayList<>()); // served from memory, while checking the directory
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(2);
+	}
+
+	@Test
+	void changedDirectoryCheckedInBackground() throws IOException {
+		temporaryFolder.newFile("a");
+		sut = new FileSystemCompleter(state, tasks::add); // run on demand
+		given(state.getCwd()).willReturn(temporaryFolder.toPath());
+		given(line.word()).willReturn("");
+		sut.complete(lineReader, line, new ArrayList<>());
+		tasks.get(0).run();
+		temporaryFolder.newFile("b");
+		Files.setLastModifiedTime(temporaryFolder.toPath(), FileTime.fromMillis(0));
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(1);
+		assertThat(tasks).hasSize(2);
+		tasks.get(1).run();
+		candidates.clear();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(2);
+	}
+
+	@Test
+	void slowListingDoesNotBlock() throws IOException {
+		temporaryFolder.newFile("a");
+		sut = new FileSystemCompleter(state, tasks::add); // never run
+		given(state.getCwd()).willReturn(temporaryFolder.toPath());
+		given(line.word()).willReturn("");
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).isEmpty();
+		tasks.get(0).run();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(1);
+	}
+
+	@Test
+	void rejectedListingIsNotAwaitedAgain() throws IOException {
+		temporaryFolder.newFile("a");
+		sut = new FileSystemCompleter(state, task -> {
+			tasks.add(task);
+			if (tasks.size() == 1) {
+				throw new RejectedExecutionException("simulated shutdown");
+			}
+			task.run();
+		});
+		given(state.getCwd()).willReturn(temporaryFolder.toPath());
+		given(line.word()).willReturn("");
+		List<Candidate> candidates = new ArrayList<>();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).isEmpty();
+		sut.complete(lineReader, line, candidates);
+		assertThat(candidates).hasSize(1);
+	}
+
+	@Test
+	void missingDirectory() {
+		given(state.getCwd()).willReturn(temporaryFolder.toPath().resolve("missing"));
+		given(line.word()).willReturn("");
+		List<Candidate> candidates = new ArrayList<>();
+		assertThatThrownBy(() -> sut.complete(lineReader, line, candidates))
+			.isInstanceOf(UncheckedIOException.class);
+	}
 }
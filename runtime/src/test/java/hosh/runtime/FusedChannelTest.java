@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Transformer.Transformation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+@ExtendWith(MockitoExtension.class)
+class FusedChannelTest {
+
+	@Mock
+	OutputChannel next;
+
+	@Mock(stubOnly = true)
+	Record record;
+
+	@Test
+	void applyTransformation() {
+		FusedChannel sut = new FusedChannel((r, out) -> {
+			out.send(r);
+			return true;
+		}, next);
+		sut.send(record);
+		then(next).should().send(record);
+	}
+
+	@Test
+	void stopSenderWhenNoMoreRecordsAreNeeded() {
+		FusedChannel sut = new FusedChannel((r, out) -> {
+			out.send(r);
+			return false;
+		}, next);
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(ProducerPoisonPill.class);
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(ProducerPoisonPill.class);
+		then(next).should().send(record);
+		assertThat(sut.isDone()).isTrue();
+	}
+
+	@Test
+	void doneWhenNextIsDone() {
+		FusedChannel sut = new FusedChannel((r, out) -> true, next);
+		given(next.isDone()).willReturn(true);
+		assertThat(sut.isDone()).isTrue();
+	}
+
+	@Test
+	void endIsPropagatedDownTheChain() {
+		FusedChannel sut = new FusedChannel((r, out) -> false, new FusedChannel(new Transformation() {
+
+			@Override
+			public boolean apply(Record r, OutputChannel out) {
+				return true;
+			}
+
+			@Override
+			public void end(OutputChannel out) {
+				out.send(record);
+			}
+		}, next));
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(ProducerPoisonPill.class);
+		sut.end();
+		sut.end();
+		then(next).should().send(record);
+	}
+}
@@ -23,6 +23,8 @@
  */
 package hosh.runtime;
 
+import hosh.spi.Command;
+import hosh.spi.CommandWrapper;
 import org.jline.reader.LineReader;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
@@ -32,41 +34,172 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
 
 @ExtendWith(MockitoExtension.class)
 class HoshHighlighterTest {
 
 	@Mock(stubOnly = true)
-	Compiler compiler;
+	CommandResolver commandResolver;
 
-	@Mock(stubOnly = true)
+	@Mock
 	LineReader lineReader;
 
 	@Mock(stubOnly = true)
-	Compiler.Program program;
+	Command command;
+
+	@Mock(stubOnly = true)
+	CommandWrapper commandWrapper;
+
+	final List<Runnable> tasks = new ArrayList<>();
 
 	HoshHighlighter sut;
 
 	@BeforeEach
 	void setUp() {
-		sut = new HoshHighlighter(compiler);
+		sut = new HoshHighlighter(commandResolver, Runnable::run);
+	}
+
+	@Test
+	void knownCommand() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "ls /tmp");
+		assertThat(attributedString.toString()).isEqualTo("ls /tmp");
+		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+		assertThat(attributedString.styleAt(3)).isEqualTo(AttributedStyle.DEFAULT);
+	}
+
+	@Test
+	void unknownCommand() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.empty());
+		AttributedString attributedString = sut.highlight(lineReader, "ls /tmp");
+		assertThat(attributedString.styleAt(0)).isEqualTo(error());
+		assertThat(attributedString.styleAt(3)).isEqualTo(AttributedStyle.DEFAULT);
 	}
 
 	@Test
-	void noError() {
-		given(compiler.compile(any())).willReturn(program);
-		AttributedString attributedString = sut.highlight(lineReader, "current line");
-		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.DEFAULT);
+	void commandWrapperUsedAsCommand() {
+		given(commandResolver.tryResolve("withTime")).willReturn(Optional.of(commandWrapper));
+		AttributedString attributedString = sut.highlight(lineReader, "withTime");
+		assertThat(attributedString.styleAt(0)).isEqualTo(error());
 	}
 
 	@Test
-	void error() {
-		given(compiler.compile(any())).willThrow(new RuntimeException("simulated error"));
-		AttributedString attributedString = sut.highlight(lineReader, "current line");
-		assertThat(attributedString.styleAt(0)).isNotEqualTo(AttributedStyle.DEFAULT); // it is ok to assert that is not default style
+	void commandsOfPipelineAndWrapper() {
+		given(commandResolver.tryResolve("withTime")).willReturn(Optional.of(commandWrapper));
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		given(commandResolver.tryResolve("count")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "withTime { ls | count }");
+		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+		assertThat(attributedString.styleAt(11)).isEqualTo(AttributedStyle.BOLD);
+		assertThat(attributedString.styleAt(16)).isEqualTo(AttributedStyle.BOLD);
 	}
 
-}
\ No newline at end of file
+	@Test
+	void commandWrapperWithArgumentsAndBlock() {
+		given(commandResolver.tryResolve("parallel")).willReturn(Optional.of(commandWrapper));
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "parallel 4 { ls }");
+		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+	}
+
+	@Test
+	void commandWrapperInPipelineWithoutBlock() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		given(commandResolver.tryResolve("withTime")).willReturn(Optional.of(commandWrapper));
+		AttributedString attributedString = sut.highlight(lineReader, "ls | withTime");
+		assertThat(attributedString.styleAt(5)).isEqualTo(error());
+	}
+
+	@Test
+	void variablesAndStrings() {
+		given(commandResolver.tryResolve("echo")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "echo ${A} 'b' \"c ${D}\"");
+		assertThat(attributedString.styleAt(5)).isEqualTo(variable());
+		assertThat(attributedString.styleAt(10)).isEqualTo(string());
+		assertThat(attributedString.styleAt(15)).isEqualTo(string());
+		assertThat(attributedString.styleAt(18)).isEqualTo(variable());
+	}
+
+	@Test
+	void lambdaParameterIsNotACommand() {
+		given(commandResolver.tryResolve("echo")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "{ path -> echo ${path} }");
+		assertThat(attributedString.styleAt(2)).isEqualTo(variable());
+		assertThat(attributedString.styleAt(10)).isEqualTo(AttributedStyle.BOLD);
+	}
+
+	@Test
+	void incompletePipeline() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "ls | ");
+		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+		assertThat(attributedString.styleAt(3)).isEqualTo(error());
+	}
+
+	@Test
+	void syntaxError() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "ls } /tmp");
+		assertThat(attributedString.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+		assertThat(attributedString.styleAt(3)).isEqualTo(error());
+		assertThat(attributedString.styleAt(5)).isEqualTo(error());
+	}
+
+	@Test
+	void lexicalError() {
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString attributedString = sut.highlight(lineReader, "ls @");
+		assertThat(attributedString.toString()).isEqualTo("ls @");
+		assertThat(attributedString.styleAt(3)).isEqualTo(error());
+	}
+
+	@Test
+	void resolutionDoesNotBlockHighlighting() {
+		sut = new HoshHighlighter(commandResolver, tasks::add);
+		given(commandResolver.tryResolve("ls")).willReturn(Optional.of(command));
+		AttributedString pending = sut.highlight(lineReader, "ls");
+		assertThat(pending.styleAt(0)).isEqualTo(AttributedStyle.DEFAULT);
+		assertThat(tasks).hasSize(1);
+		sut.highlight(lineReader, "ls");
+		assertThat(tasks).hasSize(1); // already pending
+		tasks.get(0).run();
+		then(lineReader).should().callWidget(LineReader.REDISPLAY);
+		AttributedString resolved = sut.highlight(lineReader, "ls");
+		assertThat(resolved.styleAt(0)).isEqualTo(AttributedStyle.BOLD);
+	}
+
+	@Test
+	void incrementalLexingMatchesFullLexing() {
+		given(commandResolver.tryResolve(any())).willReturn(Optional.of(command));
+		String[] edits = {
+			"e", "ec", "echo", "echo ", "echo '", "echo 'a b", "echo 'a b'", "echo 'a b' | ", "echo 'a b' | co",
+			"echo \"a b' | co", "echo \"a ${B} b\" | count", "echo \"a ${B!c} b\" | count", "ls\necho ${X}",
+			"ls # comment\necho", "ls # comm\necho", "",
+		};
+		for (String edit : edits) {
+			AttributedString incremental = sut.highlight(lineReader, edit);
+			AttributedString full = new HoshHighlighter(commandResolver, Runnable::run).highlight(lineReader, edit);
+			assertThat(incremental).as(edit).isEqualTo(full);
+		}
+	}
+
+	private AttributedStyle error() {
+		return AttributedStyle.BOLD.foreground(AttributedStyle.RED);
+	}
+
+	private AttributedStyle variable() {
+		return AttributedStyle.DEFAULT.foreground(AttributedStyle.CYAN);
+	}
+
+	private AttributedStyle string() {
+		return AttributedStyle.DEFAULT.foreground(AttributedStyle.GREEN);
+	}
+}
@@ -47,6 +47,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CancellationException;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -118,6 +119,19 @@ class InterpreterTest {
 		assertThat(variables).containsEntry("EXIT_STATUS", "2");
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	void storeExitStatusOncePerStatement() {
+		Map<String, String> mockedVariables = Mockito.mock(Map.class);
+		given(state.getVariables()).willReturn(mockedVariables);
+		given(command.run(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).willReturn(ExitStatus.success());
+		given(program.getStatements()).willReturn(List.of(statement, statement));
+		given(statement.getCommand()).willReturn(command);
+		given(statement.getArguments()).willReturn(args);
+		sut.eval(program, out, err);
+		then(mockedVariables).should(Mockito.times(2)).put("EXIT_STATUS", "0");
+	}
+
 	@Test
 	void handleCancellations() {
 		given(command.run(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
@@ -168,6 +182,18 @@ class InterpreterTest {
 		then(command).should().run(Mockito.eq(List.of("file")), Mockito.any(), Mockito.any(), Mockito.any());
 	}
 
+	@Test
+	void constantArgumentsResolvedByCompiler() {
+		List<String> constantArguments = List.of("file");
+		given(state.getVariables()).willReturn(variables);
+		given(command.run(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).willReturn(ExitStatus.success());
+		given(program.getStatements()).willReturn(List.of(statement));
+		given(statement.getCommand()).willReturn(command);
+		given(statement.getConstantArguments()).willReturn(Optional.of(constantArguments));
+		sut.eval(program, out, err);
+		then(command).should().run(Mockito.same(constantArguments), Mockito.any(), Mockito.any(), Mockito.any());
+	}
+
 	@Test
 	void presentVariable() {
 		args.add(new Compiler.Variable("VARIABLE"));
@@ -222,4 +248,20 @@ class InterpreterTest {
 		assertThat(withThread.currentName()).isEqualTo("command='java'");
 		then(err).shouldHaveNoMoreInteractions(); // checking no assertion failures happened
 	}
+
+	@Test
+	void statementsRunInSameThread() {
+		List<Thread> threads = new ArrayList<>();
+		given(state.getVariables()).willReturn(variables);
+		given(command.run(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).willAnswer(invocation -> {
+			threads.add(Thread.currentThread());
+			return ExitStatus.success();
+		});
+		given(program.getStatements()).willReturn(List.of(statement, statement));
+		given(statement.getCommand()).willReturn(command);
+		given(statement.getArguments()).willReturn(args);
+		ExitStatus exitStatus = sut.eval(program, out, err);
+		assertThat(exitStatus).isSuccess();
+		assertThat(threads).hasSize(2).containsOnly(threads.get(0));
+	}
 }
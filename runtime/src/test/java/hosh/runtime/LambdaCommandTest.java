@@ -46,6 +46,7 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static hosh.spi.test.support.ExitStatusAssert.assertThat;
 
 @ExtendWith(MockitoExtension.class)
@@ -69,6 +70,9 @@ class LambdaCommandTest {
 	@Mock
 	State state;
 
+	@Mock
+	State.Scope scope;
+
 	LambdaCommand sut;
 
 	@BeforeEach
@@ -82,14 +86,15 @@ class LambdaCommandTest {
 	@Test
 	void presentKeyWithInnerCommandSuccess() {
 		Map<String, String> variables = new HashMap<>();
-		given(state.getVariables()).willReturn(variables);
+		given(state.getScope()).willReturn(Optional.empty());
+		given(state.getVariablesSnapshot()).willReturn(variables);
+		given(state.enterScope(Collections.singletonMap("path", "file"))).willReturn(scope);
 		given(interpreter.eval(statement, in, out, err)).willReturn(ExitStatus.success());
 		given(in.recv()).willReturn(Optional.of(Records.singleton(Keys.PATH, Values.ofPath(Path.of("file")))), Optional.empty());
 		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
 		assertThat(exitStatus).isSuccess();
 		assertThat(variables).isEmpty();
-		then(state).should().setVariables(Collections.singletonMap("path", "file"));
-		then(state).should().setVariables(variables);
+		then(scope).should().close();
 		then(in).shouldHaveNoMoreInteractions();
 		then(out).shouldHaveNoInteractions();
 		then(err).shouldHaveNoInteractions();
@@ -99,19 +104,33 @@ class LambdaCommandTest {
 	@Test
 	void presentKeyWithInnerCommandError() {
 		Map<String, String> variables = new HashMap<>();
-		given(state.getVariables()).willReturn(variables);
+		given(state.getScope()).willReturn(Optional.empty());
+		given(state.getVariablesSnapshot()).willReturn(variables);
+		given(state.enterScope(Collections.singletonMap("path", "file"))).willReturn(scope);
 		given(interpreter.eval(statement, in, out, err)).willReturn(ExitStatus.error());
 		given(in.recv()).willReturn(Optional.of(Records.singleton(Keys.PATH, Values.ofPath(Path.of("file")))), Optional.empty());
 		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
 		assertThat(exitStatus).isError();
 		assertThat(variables).isEmpty();
-		then(state).should().setVariables(Collections.singletonMap("path", "file"));
-		then(state).should().setVariables(variables);
+		then(scope).should().close();
 		then(in).shouldHaveNoMoreInteractions();
 		then(out).shouldHaveNoInteractions();
 		then(err).shouldHaveNoInteractions();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	void nestedLambdaEnclosesOuterFrame() {
+		given(state.getScope()).willReturn(Optional.of(Map.of("outer", "value")));
+		given(state.enterScope(Map.of("path", "file", "outer", "value"))).willReturn(scope);
+		given(interpreter.eval(statement, in, out, err)).willReturn(ExitStatus.success());
+		given(in.recv()).willReturn(Optional.of(Records.singleton(Keys.PATH, Values.ofPath(Path.of("file")))), Optional.empty());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(scope).should().close();
+		then(state).should(never()).getVariablesSnapshot();
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	void missingKey() {
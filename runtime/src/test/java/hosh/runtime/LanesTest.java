@@ -0,0 +1,338 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.Compiler.Statement;
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.Command;
+import hosh.spi.Errors;
+import hosh.spi.ExitStatus;
+import hosh.spi.InputChannel;
+import hosh.spi.Keys;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.State;
+import hosh.spi.Transformer;
+import hosh.spi.Values;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static hosh.spi.test.support.ExitStatusAssert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+@ExtendWith(MockitoExtension.class)
+class LanesTest {
+
+	@Mock
+	OutputChannel err;
+
+	@Mock(stubOnly = true)
+	Statement statement;
+
+	@Mock(stubOnly = true, lenient = true)
+	Interpreter interpreter;
+
+	final ExecutorService executor = Executors.newCachedThreadPool();
+
+	final List<Record> output = Collections.synchronizedList(new ArrayList<>());
+
+	@BeforeEach
+	void setup() {
+		given(interpreter.getExecutor()).willReturn(executor);
+	}
+
+	@AfterEach
+	void cleanup() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void orderedKeepsInputOrder() {
+		// even numbers are slower
+		givenLane(value -> {
+			sleep(value % 2 == 0 ? 2 : 0);
+			return List.of(value * 10);
+		});
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runOrdered(numbers(100), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyElementsOf(records(IntStream.range(0, 100).map(i -> i * 10)));
+	}
+
+	@Test
+	void orderedKeepsInputOrderWhileFilteringAndExpanding() {
+		// multiples of 3 are dropped, everything else is duplicated
+		givenLane(value -> value % 3 == 0 ? List.of() : List.of(value, value));
+		Lanes sut = new Lanes(interpreter, statement, 3);
+		ExitStatus exitStatus = sut.runOrdered(numbers(30), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyElementsOf(records(IntStream.range(0, 30).filter(i -> i % 3 != 0).flatMap(i -> IntStream.of(i, i))));
+	}
+
+	@Test
+	void unorderedSendsAllRecords() {
+		givenLane(value -> {
+			sleep(value % 2 == 0 ? 2 : 0);
+			return List.of(value);
+		});
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runUnordered(numbers(100), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyInAnyOrderElementsOf(records(IntStream.range(0, 100)));
+	}
+
+	@Test
+	void lanesRunConcurrently() {
+		AtomicInteger running = new AtomicInteger(0);
+		AtomicInteger maxRunning = new AtomicInteger(0);
+		givenLane(value -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			sleep(10);
+			running.decrementAndGet();
+			return List.of(value);
+		});
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runUnordered(numbers(20), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(maxRunning).hasValueGreaterThan(1);
+	}
+
+	@Test
+	void partitionedSendsSameKeyToSameLane() {
+		Map<Long, Set<String>> lanesByValue = new ConcurrentHashMap<>();
+		givenLane(value -> {
+			lanesByValue.computeIfAbsent((long) value, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+			return List.of(value);
+		});
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runPartitioned(Keys.VALUE, numbers(100, 7), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyInAnyOrderElementsOf(records(IntStream.range(0, 100).map(i -> i % 7)));
+		Assertions.assertThat(lanesByValue).hasSize(7).allSatisfy((value, lanes) -> Assertions.assertThat(lanes).hasSize(1));
+	}
+
+	@Test
+	void partitionedWithoutKey() {
+		givenLane(List::of);
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runPartitioned(Keys.TEXT, numbers(10), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyInAnyOrderElementsOf(records(IntStream.range(0, 10)));
+	}
+
+	@Test
+	void consumerDoneStopsPartitionedLanes() {
+		givenLane(List::of);
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		long start = System.nanoTime();
+		ExitStatus exitStatus = sut.runPartitioned(Keys.VALUE, infinite(), new TakeOne(), err);
+		Duration latency = Duration.ofNanos(System.nanoTime() - start);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(latency).isLessThan(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void laneError() {
+		willAnswer(invocation -> {
+			InputChannel in = invocation.getArgument(1);
+			in.recv();
+			return ExitStatus.error();
+		}).given(interpreter).eval(eq(statement), any(), any(), any());
+		Lanes sut = new Lanes(interpreter, statement, 2);
+		ExitStatus exitStatus = sut.runOrdered(numbers(10), output::add, err);
+		assertThat(exitStatus).isError();
+	}
+
+	@Test
+	void orderedRejectsNestedPipelineOfSeveralStages() {
+		Statement producer = mock(Statement.class, withSettings().stubOnly());
+		Statement consumer = mock(Statement.class, withSettings().stubOnly());
+		Command command = mock(Command.class);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(command);
+		PipelineCommand pipeline = givenNestedPipeline(producer, consumer);
+		given(statement.getCommand()).willReturn(pipeline);
+		Lanes sut = new Lanes(interpreter, statement, 2);
+		ExitStatus exitStatus = sut.runOrdered(numbers(10), output::add, err);
+		assertThat(exitStatus).isError();
+		then(err).should().send(Errors.message("ordered mode needs a command sending its output in the thread reading the input, use 'unordered'"));
+		Assertions.assertThat(output).isEmpty();
+	}
+
+	@Test
+	void orderedAcceptsNestedPipelineFusedInSingleStage() {
+		Statement producer = mock(Statement.class, withSettings().stubOnly());
+		Statement consumer = mock(Statement.class, withSettings().stubOnly());
+		Command command = mock(Command.class);
+		Transformer transformer = mock(Transformer.class);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		PipelineCommand pipeline = givenNestedPipeline(producer, consumer);
+		given(statement.getCommand()).willReturn(pipeline);
+		givenLane(value -> List.of(value * 10));
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		ExitStatus exitStatus = sut.runOrdered(numbers(100), output::add, err);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(output).containsExactlyElementsOf(records(IntStream.range(0, 100).map(i -> i * 10)));
+	}
+
+	@Test
+	void orderedRejectsExternalCommand() {
+		ExternalCommand external = mock(ExternalCommand.class);
+		given(statement.getCommand()).willReturn(external);
+		Lanes sut = new Lanes(interpreter, statement, 2);
+		ExitStatus exitStatus = sut.runOrdered(numbers(10), output::add, err);
+		assertThat(exitStatus).isError();
+		Assertions.assertThat(output).isEmpty();
+	}
+
+	@Test
+	void consumerDoneStopsUnorderedLanes() {
+		givenLane(List::of);
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		long start = System.nanoTime();
+		ExitStatus exitStatus = sut.runUnordered(infinite(), new TakeOne(), err);
+		Duration latency = Duration.ofNanos(System.nanoTime() - start);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(latency).isLessThan(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void consumerDoneStopsOrderedLanes() {
+		givenLane(List::of);
+		Lanes sut = new Lanes(interpreter, statement, 4);
+		long start = System.nanoTime();
+		ExitStatus exitStatus = sut.runOrdered(infinite(), new TakeOne(), err);
+		Duration latency = Duration.ofNanos(System.nanoTime() - start);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(latency).isLessThan(Duration.ofSeconds(1));
+	}
+
+	private interface LaneFunction {
+
+		List<Integer> apply(int value);
+	}
+
+	// every lane behaves like a stateless command: records are handled one at a time
+	private void givenLane(LaneFunction function) {
+		willAnswer(invocation -> {
+			InputChannel in = invocation.getArgument(1);
+			OutputChannel out = invocation.getArgument(2);
+			for (Record record : InputChannel.iterate(in)) {
+				int value = (int) valueOf(record);
+				for (int result : function.apply(value)) {
+					out.send(Records.singleton(Keys.VALUE, Values.ofNumeric(result)));
+				}
+			}
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(statement), any(), any(), any());
+	}
+
+	// injected by the interpreter, here a mock
+	private PipelineCommand givenNestedPipeline(Statement producer, Statement consumer) {
+		State state = mock(State.class, withSettings().stubOnly());
+		given(state.getVariables()).willReturn(Map.of());
+		PipelineCommand pipeline = new PipelineCommand(producer, consumer);
+		pipeline.setState(state);
+		return pipeline;
+	}
+
+	private long valueOf(Record record) {
+		return record.value(Keys.VALUE).flatMap(v -> v.unwrap(Long.class)).orElseThrow();
+	}
+
+	private InputChannel numbers(int count) {
+		return numbers(count, Integer.MAX_VALUE);
+	}
+
+	// 0, 1, ..., modulo - 1, 0, 1, ...
+	private InputChannel numbers(int count, int modulo) {
+		AtomicInteger next = new AtomicInteger(0);
+		return () -> {
+			int value = next.getAndIncrement();
+			return value < count ? Optional.of(Records.singleton(Keys.VALUE, Values.ofNumeric(value % modulo))) : Optional.empty();
+		};
+	}
+
+	private InputChannel infinite() {
+		return numbers(Integer.MAX_VALUE);
+	}
+
+	private List<Record> records(IntStream values) {
+		return values.mapToObj(i -> Records.singleton(Keys.VALUE, Values.ofNumeric(i))).collect(Collectors.toList());
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// like the pipe in front of 'take 1'
+	private static class TakeOne implements OutputChannel {
+
+		private volatile boolean done = false;
+
+		@Override
+		public void send(Record record) {
+			if (done) {
+				throw new ProducerPoisonPill();
+			}
+			done = true;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done;
+		}
+	}
+}
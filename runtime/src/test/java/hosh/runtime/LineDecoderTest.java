@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineDecoderTest {
+
+	@Test
+	void empty() throws IOException {
+		LineDecoder sut = new LineDecoder(InputStream.nullInputStream());
+		assertThat(sut.readLines()).isEmpty();
+		assertThat(sut.readLines()).isEmpty();
+	}
+
+	@Test
+	void lineTerminators() throws IOException {
+		assertThat(readAll("a\nb\r\nc\rd", 64)).containsExactly("a", "b", "c", "d");
+		assertThat(readAll("a\n\nb\n", 64)).containsExactly("a", "", "b");
+		assertThat(readAll("a\r\n", 64)).containsExactly("a");
+		assertThat(readAll("\n", 64)).containsExactly("");
+	}
+
+	@Test
+	void linesLongerThanBuffer() throws IOException {
+		String line = "x".repeat(100);
+		assertThat(readAll(line + "\n" + line, 7)).containsExactly(line, line);
+	}
+
+	@Test
+	void carriageReturnAndLineFeedInDifferentBuffers() throws IOException {
+		assertThat(readAll("ab\r\ncd", 3)).containsExactly("ab", "cd");
+	}
+
+	@Test
+	void multiByteCharactersAcrossBuffers() throws IOException {
+		assertThat(readAll("àèìòù\n€uro\n", 3)).containsExactly("àèìòù", "€uro");
+	}
+
+	@Test
+	void malformedInput() throws IOException {
+		byte[] bytes = {'a', (byte) 0xff, 'b', '\n'};
+		LineDecoder sut = new LineDecoder(new ByteArrayInputStream(bytes));
+		assertThat(sut.readLines()).containsExactly("a�b");
+	}
+
+	@Test
+	void allLinesOfBufferAtOnce() throws IOException {
+		LineDecoder sut = new LineDecoder(input("a\nb\nc\n"));
+		assertThat(sut.readLines()).containsExactly("a", "b", "c");
+		assertThat(sut.readLines()).isEmpty();
+	}
+
+	private List<String> readAll(String text, int bufferSize) throws IOException {
+		List<String> result = new ArrayList<>();
+		try (LineDecoder sut = new LineDecoder(input(text), bufferSize)) {
+			while (true) {
+				List<String> lines = sut.readLines();
+				if (lines.isEmpty()) {
+					break;
+				}
+				result.addAll(lines);
+			}
+		}
+		return result;
+	}
+
+	private InputStream input(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
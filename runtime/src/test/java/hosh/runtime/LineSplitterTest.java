@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineSplitterTest {
+
+	@Test
+	void empty() throws IOException {
+		LineSplitter sut = new LineSplitter(InputStream.nullInputStream());
+		assertThat(sut.readLines()).isEmpty();
+		assertThat(sut.readLines()).isEmpty();
+	}
+
+	@Test
+	void linesKeepTheirTerminator() throws IOException {
+		byte[] input = {'a', '\n', '\r', '\n', (byte) 0xff, '\n', 'b'};
+		assertThat(readAll(input, 64)).containsExactly(
+			new byte[]{'a', '\n'},
+			new byte[]{'\r', '\n'},
+			new byte[]{(byte) 0xff, '\n'},
+			new byte[]{'b'});
+	}
+
+	@Test
+	void linesLongerThanBuffer() throws IOException {
+		byte[] input = "0123456789\n0123456789".getBytes();
+		assertThat(readAll(input, 3)).containsExactly(
+			"0123456789\n".getBytes(),
+			"0123456789".getBytes());
+	}
+
+	@Test
+	void allLinesOfBufferAtOnce() throws IOException {
+		LineSplitter sut = new LineSplitter(new ByteArrayInputStream("a\nb\n".getBytes()));
+		assertThat(sut.readLines()).containsExactly("a\n".getBytes(), "b\n".getBytes());
+		assertThat(sut.readLines()).isEmpty();
+	}
+
+	private List<byte[]> readAll(byte[] input, int bufferSize) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		try (LineSplitter sut = new LineSplitter(new ByteArrayInputStream(input), bufferSize)) {
+			while (true) {
+				List<byte[]> lines = sut.readLines();
+				if (lines.isEmpty()) {
+					break;
+				}
+				result.addAll(lines);
+			}
+		}
+		return result;
+	}
+}
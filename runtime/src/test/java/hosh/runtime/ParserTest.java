@@ -58,6 +58,13 @@ class ParserTest {
 			.hasMessage("line 1:0: token recognition error at: '${ '");
 	}
 
+	@Test
+	void manyStatements() {
+		String script = "set X 1\n".repeat(1000);
+		ProgramContext parse = sut.parse(script);
+		Assertions.assertThat(parse.stmt()).hasSize(1000);
+	}
+
 	@ParameterizedTest
 	@MethodSource("all")
 	void valid(String line) {
@@ -105,6 +112,8 @@ class ParserTest {
 			"withLock /tmp/push.lock { git push }",
 			"withLock /tmp/push.lock { git push; git push --tags }",
 			"withTime { withLock /tmp/push.lock { git push } }",
+			"walk . | parallel 4 { path -> rm ${path} }",
+			"walk . | parallel 4 unordered { path -> cat ${path} | count }",
 			"cd C:\\Users\\VSSADM~1\\AppData\\Local\\Temp\\junit16864313966026428034",
 			"regex line '\\w+'",
 			"regex line \"\\w+\"",
@@ -38,6 +38,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @ExtendWith(MockitoExtension.class)
 class PipelineChannelTest {
@@ -80,6 +81,43 @@ class PipelineChannelTest {
 		send.get();
 	}
 
+	@Test
+	void sendWaitsForBusyConsumer() throws ExecutionException, InterruptedException {
+		PipelineChannel sut = new PipelineChannel();
+		Future<?> recv = withExecutor.submit(() -> {
+			try {
+				Thread.sleep(200); // i.e. consumer busy with the previous record
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			Optional<Record> recv1 = sut.recv();
+			assertThat(recv1).contains(record);
+		});
+		Future<?> send = withExecutor.submit(() -> sut.send(record));
+		recv.get();
+		send.get();
+	}
+
+	@Test
+	void sendToStoppedConsumer() throws ExecutionException, InterruptedException {
+		PipelineChannel sut = new PipelineChannel();
+		Future<?> send = withExecutor.submit(() -> assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(PipelineChannel.ProducerPoisonPill.class));
+		Thread.sleep(100);
+		sut.stopProducer();
+		send.get();
+	}
+
+	@Test
+	void stopProducer() {
+		PipelineChannel sut = new PipelineChannel();
+		assertThat(sut.isDone()).isFalse();
+		sut.stopProducer();
+		assertThat(sut.isDone()).isTrue();
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(PipelineChannel.ProducerPoisonPill.class);
+	}
+
 	@Test
 	void sendInterrupted() {
 		PipelineChannel sut = new PipelineChannel();
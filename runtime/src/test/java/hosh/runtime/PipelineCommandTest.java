@@ -28,23 +28,41 @@ import hosh.runtime.PipelineChannel.ProducerPoisonPill;
 import hosh.spi.Command;
 import hosh.spi.ExitStatus;
 import hosh.spi.InputChannel;
+import hosh.spi.Keys;
 import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.State;
+import hosh.spi.Transformer;
+import hosh.spi.Transformer.Transformation;
+import hosh.spi.Values;
 import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static hosh.spi.test.support.ExitStatusAssert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 
 @ExtendWith(MockitoExtension.class)
 class PipelineCommandTest {
@@ -70,13 +88,34 @@ class PipelineCommandTest {
 	@Mock(stubOnly = true)
 	Command command;
 
+	@Mock(stubOnly = true)
+	Transformer transformer;
+
+	@Mock(stubOnly = true)
+	Record record;
+
 	@Mock(stubOnly = true, lenient = true)
 	Interpreter interpreter;
 
+	final State state = new State();
+
+	final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@BeforeEach
+	void setup() {
+		given(interpreter.getExecutor()).willReturn(executor);
+	}
+
+	@AfterEach
+	void cleanup() {
+		executor.shutdownNow();
+	}
+
 	@Test
 	void producerAndConsumerSuccess() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), any(), any(), any());
@@ -92,6 +131,7 @@ class PipelineCommandTest {
 	void producerError() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		willReturn(ExitStatus.error()).given(interpreter).eval(eq(producer), any(), any(), any());
@@ -103,10 +143,40 @@ class PipelineCommandTest {
 		then(err).shouldHaveNoInteractions();
 	}
 
+	// i.e. 'cat missing existing | sort'
+	@Test
+	void producerErrorWhileConsumerIsDraining() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(command);
+		willAnswer(invocation -> {
+			OutputChannel next = invocation.getArgument(2);
+			for (int i = 0; i < 1000; i++) {
+				next.send(Records.singleton(Keys.VALUE, Values.ofNumeric(i)));
+			}
+			return ExitStatus.of(1);
+		}).given(interpreter).eval(eq(producer), any(), any(), any());
+		AtomicInteger received = new AtomicInteger();
+		willAnswer(invocation -> {
+			InputChannel previous = invocation.getArgument(1);
+			for (Record ignored : InputChannel.iterate(previous)) {
+				Thread.sleep(1); // slower than the producer
+				received.incrementAndGet();
+			}
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(consumer), any(), any(), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).hasExitCode(1);
+		Assertions.assertThat(received).hasValue(1000);
+	}
+
 	@Test
 	void consumerError() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), any(), any(), any());
@@ -122,6 +192,7 @@ class PipelineCommandTest {
 	void producerPoisonPill() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		willThrow(new ProducerPoisonPill()).given(interpreter).eval(eq(producer), any(), any(), any());
@@ -137,6 +208,7 @@ class PipelineCommandTest {
 	void consumerPoisonPill() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		willThrow(new ProducerPoisonPill()).given(interpreter).eval(eq(consumer), any(), any(), any());
@@ -152,6 +224,7 @@ class PipelineCommandTest {
 	void runtimeExceptions() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		NullPointerException runtimeException = new NullPointerException("simulated error");
@@ -167,6 +240,7 @@ class PipelineCommandTest {
 	void checkedExceptions() {
 		PipelineCommand sut = new PipelineCommand(producer, consumer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		Error error = new OutOfMemoryError("simulated out of memory");
@@ -184,6 +258,7 @@ class PipelineCommandTest {
 	void recursive() {
 		PipelineCommand sut = new PipelineCommand(producer, consumerProducer);
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		given(producer.getCommand()).willReturn(command);
 		given(consumer.getCommand()).willReturn(command);
 		PipelineCommand downStream = new PipelineCommand(producer, consumer);
@@ -203,13 +278,363 @@ class PipelineCommandTest {
 		PipelineCommand downStream = new PipelineCommand(new Statement(b, List.of(), ""), new Statement(c, List.of(), ""));
 		PipelineCommand sut = new PipelineCommand(new Statement(a, List.of(), ""), new Statement(downStream, List.of(), ""));
 		sut.setInterpreter(interpreter);
+		sut.setState(state);
 		downStream.setInterpreter(interpreter);
 		given(interpreter.eval(any(), any(), any(), any())).willReturn(ExitStatus.success());
+		given(b.commandLine(List.of())).willReturn(List.of("b"));
+		given(c.commandLine(List.of())).willReturn(List.of("c"));
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		// a single OS pipeline, b and c are started by a
+		then(a).should().pipeline(PipelineCommand.Position.SOLE);
+		then(a).should().pipeTo(List.of(List.of("b"), List.of("c")));
+		then(b).should(never()).pipeline(any());
+		then(c).should(never()).pipeline(any());
+	}
+
+	@Test
+	void batchingWhenAllBuiltins() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(command);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), eq(in), any(BatchingChannel.class), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(consumer), any(BatchingChannel.class), eq(out), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void batchingAfterExternalCommand() {
+		ExternalCommand external = mock(ExternalCommand.class);
+		Statement externalProducer = new Statement(external, List.of(), "");
+		PipelineCommand sut = new PipelineCommand(externalProducer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(consumer.getCommand()).willReturn(command);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(externalProducer), eq(in), any(BatchingChannel.class), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(consumer), any(BatchingChannel.class), eq(out), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void directToExternalCommand() {
+		ExternalCommand external = mock(ExternalCommand.class);
+		Statement externalConsumer = new Statement(external, List.of(), "");
+		PipelineCommand sut = new PipelineCommand(producer, externalConsumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), eq(in), any(PipelineChannel.class), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(externalConsumer), any(PipelineChannel.class), eq(out), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void explicitlyRequestedChannel() {
+		state.getVariables().put(Pipes.HOSH_PIPELINE_CHANNEL, Pipes.DIRECT);
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(command);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), eq(in), any(PipelineChannel.class), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(consumer), any(PipelineChannel.class), eq(out), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void unknownChannel() {
+		state.getVariables().put(Pipes.HOSH_PIPELINE_CHANNEL, "carrier-pigeon");
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		Assertions.assertThatThrownBy(() -> sut.run(List.of(), in, out, err))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("unknown pipeline channel: 'carrier-pigeon'");
+	}
+
+	@Test
+	void fuseTransformers() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		given(interpreter.prepare(eq(consumer), any())).willReturn(Optional.of((record, next) -> {
+			next.send(record);
+			return true;
+		}));
+		willAnswer(invocation -> {
+			OutputChannel channel = invocation.getArgument(2);
+			channel.send(record);
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(producer), eq(in), any(FusedChannel.class), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(out).should().send(record);
+		then(err).shouldHaveNoInteractions();
+	}
+
+	@Test
+	void fusedTransformerStopsProducer() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		given(interpreter.prepare(eq(consumer), any())).willReturn(Optional.of((record, next) -> false));
+		willAnswer(invocation -> {
+			OutputChannel channel = invocation.getArgument(2);
+			while (true) { // stopped by ProducerPoisonPill
+				channel.send(record);
+			}
+		}).given(interpreter).eval(eq(producer), eq(in), any(FusedChannel.class), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(out).shouldHaveNoInteractions();
+	}
+
+	@Test
+	void fusedTransformerWithInvalidArguments() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(consumer.getCommand()).willReturn(transformer);
+		given(interpreter.prepare(eq(consumer), any())).willReturn(Optional.empty());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isError();
+		then(out).shouldHaveNoInteractions();
+	}
+
+	@Test
+	void fusionDisabled() {
+		state.getVariables().put(Pipes.HOSH_PIPELINE_FUSION, "false");
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), eq(in), any(BatchingChannel.class), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(consumer), any(BatchingChannel.class), eq(out), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+	}
+
+	@Test
+	void externalCommandWithFusedTransformer() {
+		// simulating a | b | t with a, b as external commands and t as transformer
+		ExternalCommand a = mock(ExternalCommand.class, "a");
+		ExternalCommand b = mock(ExternalCommand.class, "b");
+		Statement t = new Statement(transformer, List.of(), "");
+		PipelineCommand downStream = new PipelineCommand(new Statement(b, List.of(), ""), t);
+		PipelineCommand sut = new PipelineCommand(new Statement(a, List.of(), ""), new Statement(downStream, List.of(), ""));
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(interpreter.prepare(eq(t), any())).willReturn(Optional.of((record, next) -> true));
+		given(interpreter.eval(any(), any(), any(), any())).willReturn(ExitStatus.success());
+		given(b.commandLine(List.of())).willReturn(List.of("b"));
 		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
 		assertThat(exitStatus).isSuccess();
+		// a and b are connected by an OS pipe, the output of b goes to t
 		then(a).should().pipeline(PipelineCommand.Position.FIRST);
-		then(b).should().pipeline(PipelineCommand.Position.MIDDLE);
-		then(c).should().pipeline(PipelineCommand.Position.LAST);
+		then(a).should().pipeTo(List.of(List.of("b")));
+		then(b).should(never()).pipeline(any());
+	}
+
+	@Test
+	void fusedStageRunsInCallerThread() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		given(interpreter.prepare(eq(consumer), any())).willReturn(Optional.of((record, next) -> true));
+		Thread caller = Thread.currentThread();
+		willAnswer(invocation -> {
+			Assertions.assertThat(Thread.currentThread()).isSameAs(caller);
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(producer), eq(in), any(FusedChannel.class), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
 	}
 
+	@Test
+	void fusedAggregatorSendsResultAfterProducer() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(transformer);
+		given(interpreter.prepare(eq(consumer), any())).willReturn(Optional.of(new Transformation() {
+
+			@Override
+			public boolean apply(Record ignored, OutputChannel next) {
+				return true;
+			}
+
+			@Override
+			public void end(OutputChannel next) {
+				next.send(record);
+			}
+		}));
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), eq(in), any(FusedChannel.class), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(out).should().send(record);
+	}
+
+	@Test
+	void consumerDoneWakesUpBlockedProducer() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(consumer.getCommand()).willReturn(command);
+		willAnswer(invocation -> {
+			try {
+				Thread.sleep(Long.MAX_VALUE); // i.e. waiting for the network
+				return ExitStatus.success();
+			} catch (InterruptedException e) {
+				return ExitStatus.error();
+			}
+		}).given(interpreter).eval(eq(producer), any(), any(), any());
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(consumer), any(), any(), any());
+		long start = System.nanoTime();
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		Duration latency = Duration.ofNanos(System.nanoTime() - start);
+		assertThat(exitStatus).isError(); // interrupted
+		Assertions.assertThat(latency).isLessThan(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void adjacentExternalCommandsArePiped() {
+		ExternalCommand first = mock(ExternalCommand.class);
+		ExternalCommand second = mock(ExternalCommand.class);
+		given(second.commandLine(List.of("-l"))).willReturn(List.of("/usr/bin/wc", "-l"));
+		given(consumer.getArguments()).willReturn(List.of(new Compiler.Constant("-l")));
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(first);
+		given(consumer.getCommand()).willReturn(second);
+		willReturn(ExitStatus.success()).given(interpreter).eval(eq(producer), any(), any(), any());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(first).should().pipeline(PipelineCommand.Position.SOLE);
+		then(first).should().pipeTo(List.of(List.of("/usr/bin/wc", "-l")));
+	}
+
+	@Test
+	void rawBytesThroughPassThroughTransformer() {
+		// simulating a | t | b with a, b as external commands and t as 'take'
+		ExternalCommand a = mock(ExternalCommand.class, "a");
+		ExternalCommand b = mock(ExternalCommand.class, "b");
+		Statement t = new Statement(transformer, List.of(), "");
+		PipelineCommand downStream = new PipelineCommand(t, new Statement(b, List.of(), ""));
+		PipelineCommand sut = new PipelineCommand(new Statement(a, List.of(), ""), new Statement(downStream, List.of(), ""));
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(transformer.isPassThrough()).willReturn(true);
+		given(interpreter.prepare(eq(t), any())).willReturn(Optional.of((record, next) -> true));
+		given(interpreter.eval(any(), any(), any(), any())).willReturn(ExitStatus.success());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(a).should().sendRawBytes(true);
+		then(b).should().sendRawBytes(false);
+	}
+
+	@Test
+	void externalCommandsAroundTransformerAreNotPiped() {
+		// simulating a | t | b with a, b as external commands and t as transformer
+		ExternalCommand a = mock(ExternalCommand.class, "a");
+		ExternalCommand b = mock(ExternalCommand.class, "b");
+		Statement t = new Statement(transformer, List.of(), "");
+		PipelineCommand downStream = new PipelineCommand(t, new Statement(b, List.of(), ""));
+		PipelineCommand sut = new PipelineCommand(new Statement(a, List.of(), ""), new Statement(downStream, List.of(), ""));
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(interpreter.prepare(eq(t), any())).willReturn(Optional.of((record, next) -> true));
+		given(interpreter.eval(any(), any(), any(), any())).willReturn(ExitStatus.success());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus).isSuccess();
+		then(a).should().pipeline(PipelineCommand.Position.FIRST);
+		then(a).should().pipeTo(List.of());
+		then(b).should().pipeline(PipelineCommand.Position.LAST);
+		then(b).should().pipeTo(List.of());
+		then(a).should().sendRawBytes(false); // t looks at values
+	}
+
+	@Test
+	void consumerDoneDestroysBlockedExternalProducer() {
+		ExternalCommand external = mock(ExternalCommand.class);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+		willAnswer(invocation -> {
+			cancelled.countDown();
+			return null;
+		}).given(external).cancel(any());
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(external);
+		given(consumer.getCommand()).willReturn(command);
+		willAnswer(invocation -> {
+			// like a process blocked writing to stdout: not interruptible
+			started.countDown();
+			while (cancelled.getCount() > 0) {
+				try {
+					cancelled.await();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(producer), any(), any(), any());
+		willAnswer(invocation -> {
+			started.await();
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(consumer), any(), any(), any());
+		long start = System.nanoTime();
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		Duration latency = Duration.ofNanos(System.nanoTime() - start);
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(latency).isLessThan(Duration.ofSeconds(1));
+		then(external).should().cancel(any());
+	}
+
+	@Test
+	void statsForEachStage() {
+		PipelineCommand sut = new PipelineCommand(producer, consumer);
+		sut.setInterpreter(interpreter);
+		sut.setState(state);
+		given(producer.getCommand()).willReturn(command);
+		given(producer.getLocation()).willReturn("producer");
+		given(consumer.getCommand()).willReturn(command);
+		given(consumer.getLocation()).willReturn("consumer");
+		willAnswer(invocation -> {
+			OutputChannel channel = invocation.getArgument(2);
+			channel.send(record);
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(producer), any(), any(), any());
+		willAnswer(invocation -> {
+			InputChannel channel = invocation.getArgument(1);
+			for (Record ignored : InputChannel.iterate(channel)) {
+				// consume everything
+			}
+			return ExitStatus.success();
+		}).given(interpreter).eval(eq(consumer), any(), any(), any());
+		List<Record> stats = new ArrayList<>();
+		ExitStatus exitStatus = StageStats.collecting(stats::add, () -> sut.run(List.of(), in, out, err));
+		assertThat(exitStatus).isSuccess();
+		Assertions.assertThat(stats).hasSize(2);
+		Assertions.assertThat(stats.get(0).value(StageStats.STAGE)).contains(Values.ofText("producer"));
+		Assertions.assertThat(stats.get(0).value(StageStats.RECORDS_OUT)).contains(Values.ofNumeric(1));
+		Assertions.assertThat(stats.get(1).value(StageStats.STAGE)).contains(Values.ofText("consumer"));
+		Assertions.assertThat(stats.get(1).value(StageStats.RECORDS_IN)).contains(Values.ofNumeric(1));
+	}
 }
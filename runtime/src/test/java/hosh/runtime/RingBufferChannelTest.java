@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.runtime.PipelineChannel.ProducerPoisonPill;
+import hosh.spi.Keys;
+import hosh.spi.Record;
+import hosh.spi.Records;
+import hosh.spi.Values;
+import hosh.test.support.WithExecutor;
+import hosh.test.support.WithThread;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RingBufferChannelTest {
+
+	@RegisterExtension
+	final WithThread withThread = new WithThread();
+
+	@RegisterExtension
+	final WithExecutor withExecutor = new WithExecutor(Executors.newFixedThreadPool(2));
+
+	@Test
+	void stopConsumer() throws ExecutionException, InterruptedException {
+		RingBufferChannel sut = new RingBufferChannel();
+		Future<?> send = withExecutor.submit(() -> {
+			sut.send(record(1));
+			sut.stopConsumer();
+		});
+		send.get();
+		assertThat(sut.recv()).contains(record(1));
+		assertThat(sut.recv()).isEmpty();
+	}
+
+	@Test
+	void preserveOrderWhenProducerIsFaster() throws ExecutionException, InterruptedException {
+		RingBufferChannel sut = new RingBufferChannel(4);
+		Future<?> send = withExecutor.submit(() -> {
+			for (int i = 0; i < 10_000; i++) {
+				sut.send(record(i));
+			}
+			sut.stopConsumer();
+		});
+		List<Record> received = new ArrayList<>();
+		Optional<Record> next;
+		while ((next = sut.recv()).isPresent()) {
+			received.add(next.get());
+		}
+		send.get();
+		assertThat(received)
+			.hasSize(10_000)
+			.startsWith(record(0), record(1))
+			.endsWith(record(9_998), record(9_999));
+	}
+
+	@Test
+	void stopProducer() {
+		RingBufferChannel sut = new RingBufferChannel();
+		assertThat(sut.isDone()).isFalse();
+		sut.stopProducer();
+		assertThat(sut.isDone()).isTrue();
+		Record record = record(1);
+		assertThatThrownBy(() -> sut.send(record))
+			.isInstanceOf(ProducerPoisonPill.class);
+	}
+
+	@Test
+	void stopProducerWhileBlockedOnFullRing() throws InterruptedException {
+		RingBufferChannel sut = new RingBufferChannel(1);
+		sut.send(record(1));
+		Future<?> send = withExecutor.submit(() -> sut.send(record(2))); // blocked: ring is full
+		sut.stopProducer();
+		assertThatThrownBy(send::get)
+			.isInstanceOf(ExecutionException.class)
+			.hasCauseInstanceOf(ProducerPoisonPill.class);
+	}
+
+	@Test
+	void capacityIsRoundedToPowerOfTwo() {
+		assertThat(new RingBufferChannel(1).capacity()).isEqualTo(1);
+		assertThat(new RingBufferChannel(1000).capacity()).isEqualTo(1024);
+		assertThat(new RingBufferChannel(1024).capacity()).isEqualTo(1024);
+	}
+
+	@Test
+	void invalidCapacity() {
+		assertThatThrownBy(() -> new RingBufferChannel(0))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("capacity must be >= 1");
+	}
+
+	@Test
+	void recvInterrupted() {
+		RingBufferChannel sut = new RingBufferChannel();
+		withThread.interrupt();
+		Optional<Record> recv = sut.recv();
+		assertThat(recv).isEmpty();
+		assertThat(withThread.isInterrupted()).isTrue();
+	}
+
+	@Test
+	void sendInterruptedOnFullRing() {
+		RingBufferChannel sut = new RingBufferChannel(1);
+		sut.send(record(1));
+		withThread.interrupt();
+		sut.send(record(2)); // dropped
+		assertThat(withThread.isInterrupted()).isTrue();
+	}
+
+	private Record record(int i) {
+		return Records.singleton(Keys.INDEX, Values.ofNumeric(i));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScopePropagatingExecutorTest {
+
+	State state;
+
+	ExecutorService sut;
+
+	@BeforeEach
+	void setUp() {
+		state = new State();
+		state.getVariables().put("A", "shell");
+		sut = new ScopePropagatingExecutor(Executors.newSingleThreadExecutor(), state);
+	}
+
+	@AfterEach
+	void tearDown() {
+		sut.shutdownNow();
+	}
+
+	@Test
+	void taskSubmittedOutsideScope() throws Exception {
+		String value = sut.submit(() -> state.getVariables().get("A")).get();
+		assertThat(value).isEqualTo("shell");
+	}
+
+	@Test
+	void taskSubmittedInsideScope() throws Exception {
+		String value;
+		try (State.Scope ignored = state.enterScope(Map.of("A", "scope"))) {
+			value = sut.submit(() -> state.getVariables().get("A")).get();
+		}
+		assertThat(value).isEqualTo("scope");
+	}
+
+	@Test
+	void scopeDoesNotLeakToNextTask() throws Exception {
+		try (State.Scope ignored = state.enterScope(Map.of("A", "scope"))) {
+			sut.submit(() -> state.getVariables().get("A")).get();
+		}
+		String value = sut.submit(() -> state.getVariables().get("A")).get();
+		assertThat(value).isEqualTo("shell");
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.InputChannel;
+import hosh.spi.OutputChannel;
+import hosh.spi.Record;
+import hosh.spi.Values;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+class StageStatsTest {
+
+	@Mock
+	InputChannel in;
+
+	@Mock
+	OutputChannel out;
+
+	@Mock
+	OutputChannel channel;
+
+	@Mock(stubOnly = true)
+	Record record;
+
+	@Test
+	void countRecords() {
+		StageStats sut = new StageStats("cmd", channel);
+		given(in.recv()).willReturn(Optional.of(record), Optional.of(record), Optional.empty());
+		InputChannel meteredIn = sut.meter(in);
+		OutputChannel meteredOut = sut.meter(out);
+		sut.measure(() -> {
+			for (Record r : InputChannel.iterate(meteredIn)) {
+				meteredOut.send(r);
+			}
+			return null;
+		});
+		Record result = sut.toRecord();
+		assertThat(result.value(StageStats.STAGE)).contains(Values.ofText("cmd"));
+		assertThat(result.value(StageStats.RECORDS_IN)).contains(Values.ofNumeric(2));
+		assertThat(result.value(StageStats.RECORDS_OUT)).contains(Values.ofNumeric(2));
+		assertThat(result.value(StageStats.BYTES_IN)).contains(Values.none());
+		assertThat(result.value(StageStats.BYTES_OUT)).contains(Values.none());
+		then(out).should(times(2)).send(record);
+	}
+
+	@Test
+	void countBytesOfExternalCommands() throws IOException {
+		StageStats sut = new StageStats("cmd", channel);
+		try (OutputStream stdin = sut.meter(new ByteArrayOutputStream());
+		     InputStream stdout = sut.meter(new ByteArrayInputStream(new byte[]{1, 2, 3}))) {
+			stdin.write(new byte[]{1, 2});
+			stdin.write(3);
+			stdout.readAllBytes();
+		}
+		Record result = sut.toRecord();
+		assertThat(result.value(StageStats.BYTES_IN)).contains(Values.ofSize(3));
+		assertThat(result.value(StageStats.BYTES_OUT)).contains(Values.ofSize(3));
+	}
+
+	@Test
+	void currentStageAndChannelOnlyWhileMeasuring() {
+		StageStats sut = new StageStats("cmd", channel);
+		assertThat(StageStats.current()).isEmpty();
+		sut.measure(() -> {
+			assertThat(StageStats.current()).contains(sut);
+			return null;
+		});
+		assertThat(StageStats.current()).isEmpty();
+		assertThat(StageStats.channel()).isEmpty();
+	}
+
+	@Test
+	void report() {
+		StageStats sut = new StageStats("cmd", channel);
+		sut.report();
+		then(channel).should().send(sut.toRecord());
+	}
+
+	@Test
+	void meteredOutputForwardsDemand() {
+		StageStats sut = new StageStats("cmd", channel);
+		given(out.isDone()).willReturn(true);
+		assertThat(sut.meter(out).isDone()).isTrue();
+	}
+}
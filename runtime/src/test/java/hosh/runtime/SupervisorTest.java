@@ -25,29 +25,36 @@ package hosh.runtime;
 
 import hosh.spi.ExitStatus;
 import hosh.test.support.WithThread;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.RegisterExtension;
-import org.mockito.InjectMocks;
-import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static hosh.spi.test.support.ExitStatusAssert.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
-@ExtendWith(MockitoExtension.class)
 class SupervisorTest {
 
 	@RegisterExtension
 	final WithThread withThread = new WithThread();
 
-	@InjectMocks
-	Supervisor sut;
+	final ExecutorService executor = Executors.newCachedThreadPool();
+
+	final Supervisor sut = new Supervisor(executor);
 
 	@AfterEach
 	void cleanup() {
 		sut.close();
+		executor.shutdownNow();
 	}
 
 	@Test
@@ -83,4 +90,177 @@ class SupervisorTest {
 		assertThat(exitStatus).isError();
 	}
 
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void consumerErrorCancelsInfiniteProducer() throws ExecutionException, InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+		sut.submit(() -> infiniteProducer(started, cancelled));
+		sut.submitConsumer(() -> {
+			started.await();
+			return ExitStatus.error();
+		});
+		ExitStatus exitStatus = sut.waitForAll();
+		assertThat(exitStatus).isError();
+		Assertions.assertThat(cancelled.getCount()).isZero(); // already stopped
+	}
+
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void exceptionCancelsInfiniteProducer() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+		sut.submit(() -> infiniteProducer(started, cancelled));
+		sut.submit(() -> {
+			started.await();
+			throw new IllegalArgumentException("simulated error");
+		});
+		assertThatThrownBy(sut::waitForAll)
+			.isInstanceOf(ExecutionException.class)
+			.hasCauseInstanceOf(IllegalArgumentException.class);
+		Assertions.assertThat(cancelled.getCount()).isZero(); // already stopped
+	}
+
+	// i.e. 'cat missing existing | sort'
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void producerErrorWaitsForDrainingConsumer() throws ExecutionException {
+		CountDownLatch produced = new CountDownLatch(1);
+		AtomicBoolean drained = new AtomicBoolean(false);
+		sut.submit(() -> {
+			produced.countDown();
+			return ExitStatus.of(2);
+		});
+		sut.submitConsumer(() -> {
+			produced.await();
+			Thread.sleep(100); // still handling records
+			drained.set(true);
+			return ExitStatus.success();
+		});
+		ExitStatus exitStatus = sut.waitForAll();
+		assertThat(exitStatus).hasExitCode(2);
+		Assertions.assertThat(drained).isTrue();
+	}
+
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void exceptionDoesNotWaitForeverTaskIgnoringInterrupts() {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch released = new CountDownLatch(1);
+		sut.setStopTimeout(Duration.ofMillis(100));
+		sut.submit(() -> {
+			started.countDown();
+			while (true) {
+				try {
+					released.await(); // like a blocking read of a socket
+					return ExitStatus.success();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+		});
+		sut.submitConsumer(() -> {
+			started.await();
+			throw new IllegalStateException("simulated error");
+		});
+		try {
+			assertThatThrownBy(sut::waitForAll)
+					.isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(IllegalStateException.class);
+		} finally {
+			released.countDown();
+		}
+	}
+
+	// i.e. SIGINT while a stage is blocked writing to a full pipe
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void cancellationDoesNotWaitTaskIgnoringInterrupts() throws ExecutionException, InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch released = new CountDownLatch(1);
+		sut.submit(() -> {
+			started.countDown();
+			while (true) {
+				try {
+					released.await();
+					return ExitStatus.success();
+				} catch (InterruptedException e) {
+					// ignored
+				}
+			}
+		});
+		started.await();
+		Thread signalHandler = new Thread(sut::close);
+		signalHandler.start();
+		try {
+			assertThat(sut.waitForAll()).isError();
+		} finally {
+			released.countDown();
+			signalHandler.join();
+		}
+	}
+
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	@Test
+	void successWaitsForInfiniteProducer() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+		sut.submit(() -> infiniteProducer(started, cancelled));
+		sut.submit(ExitStatus::success);
+		Thread waiter = new Thread(() -> {
+			try {
+				sut.waitForAll();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		waiter.start();
+		waiter.join(100);
+		Assertions.assertThat(waiter.isAlive()).isTrue();
+		started.await();
+		sut.close();
+		waiter.join();
+		Assertions.assertThat(cancelled.await(1, TimeUnit.SECONDS)).isTrue();
+	}
+
+	// like 'rand': runs until interrupted
+	private ExitStatus infiniteProducer(CountDownLatch started, CountDownLatch cancelled) {
+		started.countDown();
+		while (!Thread.currentThread().isInterrupted()) {
+			Thread.onSpinWait();
+		}
+		cancelled.countDown();
+		return ExitStatus.success();
+	}
+
+	@Test
+	void virtualThreads() throws ExecutionException {
+		ExecutorService virtual = ThreadModes.byName(ThreadModes.VIRTUAL).get();
+		try (Supervisor supervisor = new Supervisor(virtual)) {
+			supervisor.submit(ExitStatus::success);
+			supervisor.submit(ExitStatus::error);
+			ExitStatus exitStatus = supervisor.waitForAll();
+			assertThat(exitStatus).isError();
+		} finally {
+			virtual.shutdownNow();
+		}
+	}
+
+	@Test
+	void closeCancelsOnlyOwnTasks() throws ExecutionException, InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		Supervisor other = new Supervisor(executor);
+		other.submit(() -> {
+			started.countDown();
+			Thread.sleep(10_000); // NOSONAR - interrupted by close()
+			return ExitStatus.success();
+		});
+		started.await();
+		sut.submit(ExitStatus::success);
+		other.close();
+		assertThat(sut.waitForAll()).isSuccess();
+		assertThat(other.waitForAll()).isError();
+		Assertions.assertThat(executor.isShutdown()).isFalse();
+	}
+
 }
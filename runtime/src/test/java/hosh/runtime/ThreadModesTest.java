@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.runtime;
+
+import hosh.spi.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThreadModesTest {
+
+	@Test
+	void platformByDefault() throws ExecutionException, InterruptedException {
+		State state = new State();
+		ExecutorService executor = ThreadModes.newExecutor(state);
+		try {
+			assertThat(executor.submit(this::isVirtual).get()).isFalse();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void virtualWhenSupported() throws ExecutionException, InterruptedException {
+		State state = new State();
+		state.getVariables().put(ThreadModes.HOSH_THREADS, ThreadModes.VIRTUAL);
+		ExecutorService executor = ThreadModes.newExecutor(state);
+		try {
+			assertThat(executor.submit(this::isVirtual).get()).isEqualTo(ThreadModes.isVirtualThreadsSupported());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void unknownThreadMode() {
+		assertThatThrownBy(() -> ThreadModes.byName("green"))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("unknown thread mode: 'green'");
+	}
+
+	@Test
+	void platformWhenUnknownThreadMode() throws ExecutionException, InterruptedException {
+		State state = new State();
+		state.getVariables().put(ThreadModes.HOSH_THREADS, "green");
+		ExecutorService executor = ThreadModes.newExecutor(state);
+		try {
+			assertThat(executor.submit(this::isVirtual).get()).isFalse();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// Thread.isVirtual() is not available when compiling for JDK 11
+	private boolean isVirtual() throws ReflectiveOperationException {
+		if (!ThreadModes.isVirtualThreadsSupported()) {
+			return false;
+		}
+		return (boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+	}
+}
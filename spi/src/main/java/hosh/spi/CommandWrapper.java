@@ -37,5 +37,24 @@ public interface CommandWrapper extends Command {
     interface NestedCommand {
 
         ExitStatus run();
+
+        /**
+         * Same as {@link #run()}, additionally sending to {@code stats} one record
+         * for each stage of every pipeline in the inner block (i.e. 'withStats { cmd }').
+         */
+        ExitStatus runWithStats(OutputChannel stats);
+
+        /**
+         * Same as {@link #run()}, but running {@code copies} instances of the inner block concurrently,
+         * each of them receiving a share of the input records (i.e. 'parallel 4 { cmd }').
+         * When {@code ordered} is true, output records follow the order of the input records.
+         */
+        ExitStatus runParallel(int copies, boolean ordered);
+
+        /**
+         * Same as {@link #runParallel(int, boolean)}, but all records having the same value for {@code key}
+         * are sent to the same copy of the inner block (i.e. 'partition ip 4 { freq ip }').
+         */
+        ExitStatus runPartitioned(Key key, int partitions);
     }
 }
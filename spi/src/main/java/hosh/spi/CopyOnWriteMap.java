@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Map where readers always see an immutable snapshot, while writers
+ * atomically swap in a modified copy of it.
+ * <p>
+ * Iteration never throws ConcurrentModificationException and never
+ * requires a copy: made for maps read by many threads (e.g. stages
+ * of a pipeline) and modified seldom (e.g. by 'set').
+ * Insertion order is preserved.
+ */
+final class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+
+	private final AtomicReference<Map<K, V>> snapshot;
+
+	public CopyOnWriteMap() {
+		this(Map.of());
+	}
+
+	public CopyOnWriteMap(Map<? extends K, ? extends V> initial) {
+		this.snapshot = new AtomicReference<>(Collections.unmodifiableMap(new LinkedHashMap<>(initial)));
+	}
+
+	// immutable, not affected by later changes
+	public Map<K, V> snapshot() {
+		return snapshot.get();
+	}
+
+	@Override
+	public V get(Object key) {
+		return snapshot.get().get(key);
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue) {
+		return snapshot.get().getOrDefault(key, defaultValue);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return snapshot.get().containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return snapshot.get().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return snapshot.get().isEmpty();
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return snapshot.get().entrySet();
+	}
+
+	// no copy when the value does not change (i.e. EXIT_STATUS stored after every statement)
+	@Override
+	public V put(K key, V value) {
+		Map<K, V> current = snapshot.get();
+		if (value != null && value.equals(current.get(key))) {
+			return value;
+		}
+		return update(copy -> copy.put(key, value));
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (!containsKey(key)) {
+			return null;
+		}
+		return update(copy -> copy.remove(key));
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> other) {
+		update(copy -> {
+			copy.putAll(other);
+			return null;
+		});
+	}
+
+	@Override
+	public void clear() {
+		snapshot.set(Map.of());
+	}
+
+	// retried when another writer swapped the snapshot in the meantime
+	private <R> R update(Function<Map<K, V>, R> mutation) {
+		while (true) {
+			Map<K, V> current = snapshot.get();
+			Map<K, V> copy = new LinkedHashMap<>(current);
+			R result = mutation.apply(copy);
+			if (snapshot.compareAndSet(current, Collections.unmodifiableMap(copy))) {
+				return result;
+			}
+		}
+	}
+}
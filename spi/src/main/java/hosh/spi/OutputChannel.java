@@ -32,4 +32,16 @@ package hosh.spi;
 public interface OutputChannel {
 
 	void send(Record record);
+
+	/**
+	 * Demand signal: true as soon as the receiver needs no more records
+	 * (i.e. 'take 10' got its 10 records).
+	 * <p>
+	 * Producers doing expensive work between two {@link #send(Record)}
+	 * (i.e. walking a directory tree or waiting for the network) should
+	 * check it and stop early.
+	 */
+	default boolean isDone() {
+		return false;
+	}
 }
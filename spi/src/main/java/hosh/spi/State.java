@@ -23,38 +23,42 @@
  */
 package hosh.spi;
 
-import hosh.doc.Todo;
-
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
 
 /**
  * The state of the shell: it has been modeled as explicit state,
  * in practice this is a global variable.
  * <p>
- * Not thread-safe.
+ * Thread-safe: variables, commands and PATH are copy-on-write, readers
+ * (e.g. stages of a pipeline) never lock and never see a partial update
+ * made by a writer (e.g. 'cd', 'set' or 'path append').
  */
-@Todo(description = "must be thread-safe sooner or later")
 public class State {
 
 	// variables
-	private Map<String, String> variables = new LinkedHashMap<>();
+	private volatile CopyOnWriteMap<String, String> variables = new CopyOnWriteMap<>();
+
+	// variables of the lambda body evaluated by the current thread, shadowing the ones above
+	private final ThreadLocal<Map<String, String>> scope = new ThreadLocal<>();
 
 	// registered commands
-	private final Map<String, Supplier<Command>> commands = new LinkedHashMap<>();
+	private final Map<String, Supplier<Command>> commands = new CopyOnWriteMap<>();
 
 	// current working directory
-	private Path cwd;
+	private volatile Path cwd;
 
 	// PATH
-	private List<Path> path = new ArrayList<>();
+	private volatile List<Path> path = new CopyOnWriteArrayList<>();
 
 	// request exit shell before executing next command
-	private boolean exit = false;
+	private volatile boolean exit = false;
 
 	public void setCwd(Path cwd) {
 		this.cwd = cwd.normalize().toAbsolutePath();
@@ -69,11 +73,54 @@ public class State {
 	}
 
 	public void setVariables(Map<String, String> variables) {
-		this.variables = variables;
+		this.variables = new CopyOnWriteMap<>(variables);
 	}
 
+	/**
+	 * The variables visible to the current thread: the ones of the
+	 * innermost scope, if any, otherwise the variables of the shell.
+	 */
 	public Map<String, String> getVariables() {
-		return variables;
+		Map<String, String> scoped = scope.get();
+		return scoped != null ? scoped : variables;
+	}
+
+	/**
+	 * Immutable copy of {@link #getVariables()}, captured once by commands
+	 * that need all variables (e.g. environment of external commands):
+	 * outside lambdas it is just the current snapshot, without copying.
+	 */
+	public Map<String, String> getVariablesSnapshot() {
+		Map<String, String> scoped = scope.get();
+		if (scoped != null) {
+			return Collections.unmodifiableMap(new HashMap<>(scoped));
+		}
+		return variables.snapshot();
+	}
+
+	/**
+	 * Binds the given variables to the current thread until the returned
+	 * scope is closed, allowing several bodies of the same lambda to be
+	 * evaluated concurrently, each one seeing its own variables.
+	 */
+	public Scope enterScope(Map<String, String> scopeVariables) {
+		Map<String, String> previous = scope.get();
+		scope.set(scopeVariables);
+		return () -> {
+			if (previous == null) {
+				scope.remove();
+			} else {
+				scope.set(previous);
+			}
+		};
+	}
+
+	/**
+	 * The variables bound to the current thread by {@link #enterScope(Map)},
+	 * to be propagated to tasks submitted on behalf of the current thread.
+	 */
+	public Optional<Map<String, String>> getScope() {
+		return Optional.ofNullable(scope.get());
 	}
 
 	public List<Path> getPath() {
@@ -81,7 +128,7 @@ public class State {
 	}
 
 	public void setPath(List<Path> path) {
-		this.path = path;
+		this.path = new CopyOnWriteArrayList<>(path);
 	}
 
 	public boolean isExit() {
@@ -92,6 +139,12 @@ public class State {
 		this.exit = exit;
 	}
 
+	public interface Scope extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+
 	@Override
 	public String toString() {
 		return String.format("State[cwd='%s',path=%s,variables=%s,commands=%s]", cwd, path, variables, commands);
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A command specialization for commands transforming incoming records one by
+ * one (i.e. 'filter', 'select', 'take') or aggregating them (i.e. 'count').
+ * <p>
+ * Adjacent transformers of a pipeline can be fused in a single stage, calling
+ * each other directly instead of exchanging records via channels.
+ */
+public interface Transformer extends Command {
+
+	/**
+	 * Validates arguments, sending errors to err.
+	 *
+	 * @return the transformation to apply to each incoming record, or {@link Optional#empty()} on errors
+	 */
+	Optional<Transformation> prepare(List<String> args, OutputChannel err);
+
+	/**
+	 * True when incoming records are only kept or discarded as they are, without
+	 * looking at their values (i.e. 'take', 'drop' or 'last'): the output of an
+	 * external command can pass through it undecoded, on its way to another
+	 * external command.
+	 */
+	default boolean isPassThrough() {
+		return false;
+	}
+
+	@Override
+	default ExitStatus run(List<String> args, InputChannel in, OutputChannel out, OutputChannel err) {
+		Optional<Transformation> transformation = prepare(args, err);
+		if (transformation.isEmpty()) {
+			return ExitStatus.error();
+		}
+		for (Record record : InputChannel.iterate(in)) {
+			if (!transformation.get().apply(record, out)) {
+				break;
+			}
+		}
+		transformation.get().end(out);
+		return ExitStatus.success();
+	}
+
+	/**
+	 * Per-record step of a transformer, created for each execution.
+	 */
+	interface Transformation {
+
+		/**
+		 * Sends zero or more records to out.
+		 *
+		 * @return false when no more records are needed (i.e. 'take')
+		 */
+		boolean apply(Record record, OutputChannel out);
+
+		/**
+		 * Called once after the last record, i.e. to send an aggregated result.
+		 */
+		default void end(OutputChannel out) {
+		}
+	}
+}
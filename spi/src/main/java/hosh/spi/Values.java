@@ -26,6 +26,7 @@ package hosh.spi;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.time.Duration;
@@ -522,6 +523,20 @@ public class Values {
 			this.bytes = bytes;
 		}
 
+		// values are immutable: either a copy or a read-only view, without copying
+		// (i.e. to pass the output of an external command as it is)
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> Optional<T> unwrap(Class<T> type) {
+			if (type == byte[].class) {
+				return (Optional<T>) Optional.of(bytes.clone());
+			}
+			if (type == ByteBuffer.class) {
+				return (Optional<T>) Optional.of(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+			}
+			return Optional.empty();
+		}
+
 		@Override
 		public void print(PrintWriter printWriter, Locale locale) {
 			StringBuilder sb = new StringBuilder();
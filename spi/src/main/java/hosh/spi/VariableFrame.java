@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Variables of a nested scope (e.g. the body of a lambda): bindings made in
+ * this frame shadow the ones of the enclosing scope, that is never copied nor
+ * modified. Creating a frame costs the same no matter how many variables are
+ * defined in the enclosing scope.
+ * <p>
+ * Lookups walk the chain of frames, while iterating requires merging
+ * all of them: {@link #entrySet()} returns an unmodifiable snapshot.
+ * <p>
+ * Thread-safe, since the stages of a pipeline inside a lambda body share
+ * the same frame: the enclosing scope should be thread-safe too (e.g. an
+ * immutable snapshot of the shell variables or another frame).
+ */
+public class VariableFrame extends AbstractMap<String, String> {
+
+	private final Map<String, String> enclosing;
+
+	private final Map<String, String> bindings = new HashMap<>(4);
+
+	// variables of the enclosing scope removed in this frame, allocated on first removal
+	// guarded by this, as bindings
+	private Set<String> removed = Set.of();
+
+	public VariableFrame(Map<String, String> enclosing) {
+		this.enclosing = Objects.requireNonNull(enclosing);
+	}
+
+	public VariableFrame(Map<String, String> enclosing, String key, String value) {
+		this(enclosing);
+		bindings.put(key, value);
+	}
+
+	@Override
+	public synchronized String get(Object key) {
+		String value = bindings.get(key);
+		if (value != null || bindings.containsKey(key)) {
+			return value;
+		}
+		if (removed.contains(key)) {
+			return null;
+		}
+		return enclosing.get(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		if (bindings.containsKey(key)) {
+			return true;
+		}
+		return !removed.contains(key) && enclosing.containsKey(key);
+	}
+
+	@Override
+	public synchronized String put(String key, String value) {
+		String previous = get(key);
+		bindings.put(key, value);
+		if (!removed.isEmpty()) {
+			removed.remove(key);
+		}
+		return previous;
+	}
+
+	@Override
+	public synchronized String remove(Object key) {
+		String previous = get(key);
+		bindings.remove(key);
+		if (key instanceof String && enclosing.containsKey(key)) {
+			removedForUpdate().add((String) key);
+		}
+		return previous;
+	}
+
+	@Override
+	public synchronized void clear() {
+		bindings.clear();
+		removedForUpdate().addAll(enclosing.keySet());
+	}
+
+	@Override
+	public synchronized Set<Entry<String, String>> entrySet() {
+		Map<String, String> merged = new LinkedHashMap<>(enclosing);
+		merged.keySet().removeAll(removed);
+		merged.putAll(bindings);
+		return Collections.unmodifiableMap(merged).entrySet();
+	}
+
+	private Set<String> removedForUpdate() {
+		if (removed.isEmpty()) {
+			removed = new HashSet<>();
+		}
+		return removed;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CopyOnWriteMapTest {
+
+	@Test
+	void keepsInsertionOrder() {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>();
+		sut.put("b", "1");
+		sut.put("a", "2");
+		sut.put("c", "3");
+		assertThat(sut.keySet()).containsExactly("b", "a", "c");
+	}
+
+	@Test
+	void snapshotNotAffectedByLaterChanges() {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>(Map.of("a", "1"));
+		Map<String, String> snapshot = sut.snapshot();
+		sut.put("b", "2");
+		sut.remove("a");
+		assertThat(snapshot).containsExactly(Map.entry("a", "1"));
+		assertThat(sut).containsExactly(Map.entry("b", "2"));
+	}
+
+	@Test
+	void iterationWhileWriting() {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>(Map.of("a", "1", "b", "2"));
+		List<String> keys = new ArrayList<>();
+		for (String key : sut.keySet()) {
+			keys.add(key);
+			sut.put(key + key, "");
+		}
+		assertThat(keys).containsExactlyInAnyOrder("a", "b");
+		assertThat(sut).containsOnlyKeys("a", "b", "aa", "bb");
+	}
+
+	@Test
+	void removeMissingKey() {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>(Map.of("a", "1"));
+		Map<String, String> snapshot = sut.snapshot();
+		assertThat(sut.remove("b")).isNull();
+		assertThat(sut.snapshot()).isSameAs(snapshot);
+	}
+
+	@Test
+	void putSameValue() {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>(Map.of("a", "1"));
+		Map<String, String> snapshot = sut.snapshot();
+		assertThat(sut.put("a", "1")).isEqualTo("1");
+		assertThat(sut.snapshot()).isSameAs(snapshot);
+	}
+
+	@Test
+	void concurrentWritersDoNotLoseUpdates() throws InterruptedException {
+		CopyOnWriteMap<String, String> sut = new CopyOnWriteMap<>();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int id = t;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				for (int i = 0; i < 100; i++) {
+					sut.put(id + "-" + i, "value");
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(sut).hasSize(400);
+	}
+}
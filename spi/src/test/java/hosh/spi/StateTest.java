@@ -27,6 +27,9 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -50,4 +53,51 @@ class StateTest {
 			.isNormalized();
 	}
 
+	@Test
+	void scopeShadowsVariablesOfCurrentThreadOnly() throws Exception {
+		State sut = new State();
+		sut.getVariables().put("A", "shell");
+		try (State.Scope ignored = sut.enterScope(Map.of("A", "scope"))) {
+			assertThat(sut.getVariables()).containsEntry("A", "scope");
+			assertThat(sut.getScope()).hasValue(Map.of("A", "scope"));
+			assertThat(CompletableFuture.supplyAsync(() -> sut.getVariables().get("A")).get()).isEqualTo("shell");
+		}
+		assertThat(sut.getVariables()).containsEntry("A", "shell");
+		assertThat(sut.getScope()).isEmpty();
+	}
+
+	@Test
+	void variablesSnapshot() {
+		State sut = new State();
+		sut.getVariables().put("A", "before");
+		Map<String, String> snapshot = sut.getVariablesSnapshot();
+		sut.getVariables().put("A", "after");
+		assertThat(snapshot).containsExactly(Map.entry("A", "before"));
+		try (State.Scope ignored = sut.enterScope(new VariableFrame(sut.getVariables(), "B", "scope"))) {
+			assertThat(sut.getVariablesSnapshot()).containsOnly(Map.entry("A", "after"), Map.entry("B", "scope"));
+		}
+	}
+
+	@Test
+	void pathCanBeChangedWhileIterating() {
+		State sut = new State();
+		sut.setPath(List.of(Path.of("/bin")));
+		for (Path path : sut.getPath()) {
+			sut.getPath().add(path.resolve("sub"));
+		}
+		assertThat(sut.getPath()).containsExactly(Path.of("/bin"), Path.of("/bin/sub"));
+	}
+
+	@Test
+	void nestedScopes() {
+		State sut = new State();
+		try (State.Scope outer = sut.enterScope(Map.of("A", "outer"))) {
+			try (State.Scope inner = sut.enterScope(Map.of("A", "inner"))) {
+				assertThat(sut.getVariables()).containsEntry("A", "inner");
+			}
+			assertThat(sut.getVariables()).containsEntry("A", "outer");
+		}
+		assertThat(sut.getVariables()).isEmpty();
+	}
+
 }
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import hosh.spi.Transformer.Transformation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+class TransformerTest {
+
+	@Mock(stubOnly = true)
+	InputChannel in;
+
+	@Mock
+	OutputChannel out;
+
+	@Mock
+	OutputChannel err;
+
+	@Mock(stubOnly = true)
+	Record record;
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void applyToAllRecords() {
+		given(in.recv()).willReturn(Optional.of(record), Optional.of(record), Optional.empty());
+		Transformer sut = (args, err) -> Optional.of(forward());
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus.isSuccess()).isTrue();
+		then(out).should(times(2)).send(record);
+		then(err).shouldHaveNoInteractions();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void stopWhenNoMoreRecordsAreNeeded() {
+		given(in.recv()).willReturn(Optional.of(record), Optional.of(record), Optional.empty());
+		Transformer sut = (args, err) -> Optional.of((record, out) -> false);
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus.isSuccess()).isTrue();
+		then(out).shouldHaveNoInteractions();
+		then(err).shouldHaveNoInteractions();
+	}
+
+	@Test
+	void invalidArguments() {
+		Transformer sut = (args, err) -> {
+			err.send(record);
+			return Optional.empty();
+		};
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus.isError()).isTrue();
+		then(out).shouldHaveNoInteractions();
+		then(err).should().send(record);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	void endAfterLastRecord() {
+		given(in.recv()).willReturn(Optional.of(record), Optional.empty());
+		Transformer sut = (args, err) -> Optional.of(new Transformation() {
+
+			@Override
+			public boolean apply(Record record, OutputChannel out) {
+				return true;
+			}
+
+			@Override
+			public void end(OutputChannel out) {
+				out.send(record);
+			}
+		});
+		ExitStatus exitStatus = sut.run(List.of(), in, out, err);
+		assertThat(exitStatus.isSuccess()).isTrue();
+		then(out).should().send(record);
+	}
+
+	private Transformation forward() {
+		return (record, out) -> {
+			out.send(record);
+			return true;
+		};
+	}
+}
@@ -38,6 +38,7 @@ import org.quicktheories.core.Gen;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
@@ -464,6 +465,16 @@ class ValuesTest {
 			assertThat(a).isNotEqualByComparingTo(b);
 		}
 
+		@Test
+		void unwrap() {
+			byte[] bytes = {1, 2, 3};
+			Value value = Values.ofBytes(bytes);
+			assertThat(value.unwrap(byte[].class)).hasValueSatisfying(copy -> assertThat(copy).isNotSameAs(bytes).containsExactly(1, 2, 3));
+			assertThat(value.unwrap(ByteBuffer.class)).hasValueSatisfying(view -> assertThat(view.isReadOnly()).isTrue());
+			assertThat(value.unwrap(ByteBuffer.class)).hasValue(ByteBuffer.wrap(bytes));
+			assertThat(value.unwrap(String.class)).isEmpty();
+		}
+
 		@Test
 		void compareToAnotherValueType() {
 			Value a = Values.ofBytes(new byte[]{-1, -1});
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018-2020 Davide Angelocola
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package hosh.spi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VariableFrameTest {
+
+	@Test
+	void bindingShadowsEnclosingVariable() {
+		Map<String, String> enclosing = new HashMap<>(Map.of("A", "enclosing", "B", "b"));
+		VariableFrame sut = new VariableFrame(enclosing, "A", "frame");
+		assertThat(sut.get("A")).isEqualTo("frame");
+		assertThat(sut.get("B")).isEqualTo("b");
+		assertThat(sut.get("C")).isNull();
+		assertThat(sut).isEqualTo(Map.of("A", "frame", "B", "b"));
+		assertThat(enclosing).isEqualTo(Map.of("A", "enclosing", "B", "b"));
+	}
+
+	@Test
+	void changesAreNotVisibleInEnclosingScope() {
+		Map<String, String> enclosing = new HashMap<>(Map.of("A", "a", "B", "b"));
+		VariableFrame sut = new VariableFrame(enclosing);
+		assertThat(sut.put("A", "changed")).isEqualTo("a");
+		assertThat(sut.put("C", "c")).isNull();
+		assertThat(sut.remove("B")).isEqualTo("b");
+		assertThat(sut)
+			.isEqualTo(Map.of("A", "changed", "C", "c"))
+			.doesNotContainKey("B");
+		assertThat(enclosing).isEqualTo(Map.of("A", "a", "B", "b"));
+	}
+
+	@Test
+	void removedThenBoundAgain() {
+		VariableFrame sut = new VariableFrame(Map.of("A", "a"));
+		sut.remove("A");
+		assertThat(sut.get("A")).isNull();
+		sut.put("A", "again");
+		assertThat(sut).isEqualTo(Map.of("A", "again"));
+	}
+
+	@Test
+	void clear() {
+		VariableFrame sut = new VariableFrame(Map.of("A", "a"), "B", "b");
+		sut.clear();
+		assertThat(sut).isEmpty();
+	}
+
+	@Test
+	void nestedFrames() {
+		VariableFrame outer = new VariableFrame(Map.of("A", "a"), "B", "outer");
+		VariableFrame sut = new VariableFrame(outer, "B", "inner");
+		assertThat(sut).isEqualTo(Map.of("A", "a", "B", "inner"));
+		assertThat(outer).isEqualTo(Map.of("A", "a", "B", "outer"));
+	}
+}